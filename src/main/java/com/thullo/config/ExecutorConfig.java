@@ -0,0 +1,75 @@
+package com.thullo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Executor generating image thumbnails. Work beyond the queue capacity is rejected and dropped by the caller,
+     * thumbnails that were never generated are scheduled again the next time they are requested.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor thumbnailExecutor(@Value("${app.files.thumbnail.threads:2}") int threads,
+                                                    @Value("${app.files.thumbnail.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("thumbnail-");
+        return executor;
+    }
+
+    /**
+     * Executor storing uploads in the background when asynchronous ingestion is enabled. Uploads beyond the queue
+     * capacity are rejected with 503, so the queue and the spool behind it stay bounded. On shutdown the queued
+     * uploads are given {@code app.upload.async.shutdown-await-seconds} to be stored; the rest are recovered from the
+     * spool on the next start.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor uploadExecutor(@Value("${app.upload.async.threads:2}") int threads,
+                                                 @Value("${app.upload.async.queue-capacity:50}") int queueCapacity,
+                                                 @Value("${app.upload.async.shutdown-await-seconds:60}") int shutdownAwaitSeconds) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("upload-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownAwaitSeconds);
+        return executor;
+    }
+
+    /**
+     * Executor extracting and indexing the text of attachments. Attachments beyond the queue capacity are skipped
+     * and stay unsearchable by content.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor indexExecutor(@Value("${app.files.text-index.threads:1}") int threads,
+                                                @Value("${app.files.text-index.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("index-");
+        return executor;
+    }
+
+    /**
+     * Executor writing board events to the connections subscribed to them. A connection has at most one write
+     * queued at a time, so the queue is bounded by the connections the hub accepts.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor boardEventExecutor(@Value("${app.boards.events.threads:8}") int threads,
+                                                     @Value("${app.boards.events.max-connections:30000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("board-event-");
+        return executor;
+    }
+}
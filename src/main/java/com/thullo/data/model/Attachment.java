@@ -2,6 +2,7 @@ package com.thullo.data.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.thullo.util.Helper;
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -11,6 +12,7 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
+@Table(indexes = @Index(columnList = "fileId"))
 public class Attachment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -20,8 +22,26 @@ public class Attachment {
 
     private String fileSize;
 
+    /**
+     * The size of the file as uploaded, in bytes.
+     */
+    private Long rawSize;
+
+    /**
+     * The size of the file as stored, in bytes. Unknown until the file is stored when uploads are stored in the
+     * background.
+     */
+    private Long storedSize;
+
     private String fileUrl;
 
+    /**
+     * Id of the file of {@link #fileUrl}, kept by its setter so files can be matched to their attachments by an
+     * index.
+     */
+    @JsonIgnore
+    private String fileId;
+
     @ManyToOne
     @JoinColumn(name = "task_id")
     @JsonIgnore
@@ -34,4 +54,9 @@ public class Attachment {
     @UpdateTimestamp
     @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss")
     private LocalDateTime updatedAt;
+
+    public void setFileUrl(String fileUrl) {
+        this.fileUrl = fileUrl;
+        this.fileId = Helper.fileIdOf(fileUrl);
+    }
 }
@@ -0,0 +1,41 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * A word found in the text of an attachment, linking it to the task owning the attachment. Together the rows
+ * form an inverted index, so tasks are found by attachment content from the index alone.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(indexes = {
+        @Index(columnList = "term"),
+        @Index(columnList = "attachmentId"),
+        @Index(columnList = "taskId")
+})
+public class AttachmentTerm {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String term;
+
+    @Column(nullable = false)
+    private Long attachmentId;
+
+    @Column(nullable = false)
+    private Long taskId;
+
+    public AttachmentTerm(String term, Long attachmentId, Long taskId) {
+        this.term = term;
+        this.attachmentId = attachmentId;
+        this.taskId = taskId;
+    }
+}
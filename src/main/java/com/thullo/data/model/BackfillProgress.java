@@ -0,0 +1,32 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * How far a background backfill of existing rows has come, so a restart resumes it instead of walking the
+ * rows again, and a finished backfill is never run again.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class BackfillProgress {
+    @Id
+    private String name;
+
+    /**
+     * The id of the last row filled in.
+     */
+    private Long lastId = 0L;
+
+    private boolean done;
+
+    public BackfillProgress(String name) {
+        this.name = name;
+    }
+}
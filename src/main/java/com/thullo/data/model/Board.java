@@ -3,6 +3,8 @@ package com.thullo.data.model;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.thullo.util.Helper;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.CreationTimestamp;
@@ -18,6 +20,7 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
+@Table(indexes = @Index(columnList = "imageFileId"))
 public class Board{
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,6 +30,12 @@ public class Board{
 
     private String imageUrl;
 
+    /**
+     * Id of the file of {@link #imageUrl}, kept by its setter so the board using a file can be found by an index.
+     */
+    @JsonIgnore
+    private String imageFileId;
+
     @Column(nullable = false, unique = true)
     private String boardTag;
 
@@ -53,8 +62,19 @@ public class Board{
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime updatedAt;
 
+    /**
+     * Bumped by every write to the board or to anything shown on it, used as the ETag of the board and its tasks.
+     */
+    @Column(nullable = false)
+    private long version;
+
     public List<Task> getTasks() {
         tasks.sort((o1, o2) -> (int) (o1.getPosition() - o2.getPosition()));
         return tasks;
     }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+        this.imageFileId = Helper.fileIdOf(imageUrl);
+    }
 }
@@ -0,0 +1,63 @@
+package com.thullo.data.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An entry of the change log of a board, recorded with the version of the board the change bumped it to. Every
+ * bump of the version records one, so the versions of the entries of a board have no gaps until the log is
+ * compacted.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"boardTag", "version"}),
+        indexes = @Index(columnList = "createdAt"))
+public class BoardChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonIgnore
+    private Long id;
+
+    @JsonIgnore
+    @Column(nullable = false)
+    private String boardTag;
+
+    private long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private BoardChangeType type;
+
+    /**
+     * The board ref of the changed task, or the email of the changed user.
+     */
+    private String ref;
+
+    /**
+     * The id of the changed label, comment or attachment, or the column and position a task moved to.
+     */
+    private String detail;
+
+    @CreationTimestamp
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    public BoardChange(String boardTag, long version, BoardChangeType type, String ref, String detail) {
+        this.boardTag = boardTag;
+        this.version = version;
+        this.type = type;
+        this.ref = ref;
+        this.detail = detail;
+    }
+}
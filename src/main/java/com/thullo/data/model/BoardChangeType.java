@@ -0,0 +1,22 @@
+package com.thullo.data.model;
+
+public enum BoardChangeType {
+    TASK_CREATED,
+    TASK_UPDATED,
+    TASK_MOVED,
+    TASK_DELETED,
+    CONTRIBUTORS_ADDED,
+    CONTRIBUTORS_REMOVED,
+    ATTACHMENT_ADDED,
+    ATTACHMENT_DELETED,
+    LABEL_ADDED,
+    LABEL_UPDATED,
+    LABEL_REMOVED,
+    COMMENT_ADDED,
+    COMMENT_UPDATED,
+    COMMENT_DELETED,
+    COLLABORATORS_ADDED,
+    COLLABORATORS_REMOVED,
+    USER_UPDATED,
+    BOARD_REFRESHED
+}
@@ -0,0 +1,95 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of the content kept in a {@link com.thullo.storage.FileStore}. The content encoding matches the
+ * HTTP {@code Content-Encoding} token so stored content can be sent to clients accepting it as-is.
+ */
+@Getter
+public enum ContentCodec {
+    IDENTITY("identity") {
+        @Override
+        public OutputStream encode(OutputStream out, int level, int bufferSize) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in, int bufferSize) {
+            return in;
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        public OutputStream encode(OutputStream out, int level, int bufferSize) throws IOException {
+            return new GZIPOutputStream(out, bufferSize) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in, int bufferSize) throws IOException {
+            return new GZIPInputStream(in, bufferSize);
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        public OutputStream encode(OutputStream out, int level, int bufferSize) {
+            return new DeflaterOutputStream(out, new Deflater(level), bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in, int bufferSize) {
+            return new InflaterInputStream(in, new Inflater(), bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+    };
+
+    private final String contentEncoding;
+
+    ContentCodec(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Wraps the stream so everything written to it is encoded. Closing the returned stream closes the given one.
+     *
+     * @param level the {@link Deflater} compression level, ignored by {@link #IDENTITY}
+     */
+    public abstract OutputStream encode(OutputStream out, int level, int bufferSize) throws IOException;
+
+    /**
+     * Wraps the stream so everything read from it is decoded. Closing the returned stream closes the given one.
+     */
+    public abstract InputStream decode(InputStream in, int bufferSize) throws IOException;
+
+    public static ContentCodec getCodec(String name) {
+        for (ContentCodec codec : ContentCodec.values())
+            if (codec.name().equalsIgnoreCase(name) || codec.getContentEncoding().equalsIgnoreCase(name))
+                return codec;
+        throw new IllegalArgumentException("Unknown content codec " + name);
+    }
+}
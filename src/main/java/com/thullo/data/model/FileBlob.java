@@ -0,0 +1,63 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A unique piece of stored content, shared by every {@link FileData} with the same content hash.
+ * The content is kept in its {@link com.thullo.storage.FileStore} under the storage key of the upload that
+ * published it and is only reclaimed once no file references it anymore.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class FileBlob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Hex encoded SHA-256 hash of the original content. Blobs published before content got keys of its own
+     * have none and are stored under the hash itself.
+     */
+    @Column(unique = true)
+    private String contentHash;
+
+    @Column(nullable = false, unique = true)
+    private String storageKey;
+
+    @Enumerated(EnumType.STRING)
+    private StorageType storageType;
+
+    @Enumerated(EnumType.STRING)
+    private ContentCodec codec;
+
+    private Long fileSize;
+
+    private Long compressedSize;
+
+    /**
+     * Number of {@link FileData} rows pointing at this content.
+     */
+    private long referenceCount;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public FileBlob(String contentHash, String storageKey, StorageType storageType, ContentCodec codec, Long fileSize,
+                    Long compressedSize) {
+        this.contentHash = contentHash;
+        this.storageKey = storageKey;
+        this.storageType = storageType;
+        this.codec = codec;
+        this.fileSize = fileSize;
+        this.compressedSize = compressedSize;
+        this.referenceCount = 1;
+    }
+}
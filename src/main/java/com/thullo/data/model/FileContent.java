@@ -0,0 +1,40 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.sql.Blob;
+import java.time.LocalDateTime;
+
+/**
+ * Content of a file kept by the database file store, addressed by its storage key. The blob is lazy, which
+ * takes the bytecode enhancement set up in {@code build.gradle}.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class FileContent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String storageKey;
+
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(nullable = false, columnDefinition = "longblob")
+    private Blob content;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public FileContent(String storageKey, Blob content) {
+        this.storageKey = storageKey;
+        this.content = content;
+    }
+}
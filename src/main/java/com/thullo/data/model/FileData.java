@@ -1,17 +1,26 @@
 package com.thullo.data.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
+/**
+ * Metadata of an uploaded file. The content lives in a {@link com.thullo.storage.FileStore}, or for old files in
+ * {@link LegacyFileContent}, so loading a file never reads its bytes.
+ */
 @Entity
-@Data
+@Getter
+@Setter
+@ToString
 @NoArgsConstructor
+@Table(indexes = @Index(columnList = "contentHash"))
 public class FileData {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,6 +30,42 @@ public class FileData {
     private String fileName;
     private String fileType;
 
+    /**
+     * Size of the original (uncompressed) upload in bytes.
+     */
+    private Long fileSize;
+
+    /**
+     * Size of the stored, encoded content in bytes.
+     */
+    private Long compressedSize;
+
+    /**
+     * Codec the stored content is encoded with, {@code null} for files stored before codecs were recorded,
+     * which are all gzip compressed.
+     */
+    @Enumerated(EnumType.STRING)
+    private ContentCodec codec;
+
+    /**
+     * Hex encoded SHA-256 hash of the original content, used as the strong entity tag of the file.
+     */
+    private String contentHash;
+
+    /**
+     * Key under which the content is kept by the {@link com.thullo.storage.FileStore} of {@link #storageType}.
+     */
+    private String storageKey;
+
+    @Enumerated(EnumType.STRING)
+    private StorageType storageType;
+
+    /**
+     * Email of the user who uploaded the file, whose storage quota it counts against. {@code null} for content
+     * produced by the server, such as thumbnails, and for files uploaded before uploaders were recorded.
+     */
+    private String uploadedBy;
+
     @CreationTimestamp
     @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss")
     private LocalDateTime createdAt;
@@ -29,19 +74,25 @@ public class FileData {
     @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss")
     private LocalDateTime updatedAt;
 
-    @Lob
-    @Column(name = "file_byte", nullable = false, columnDefinition = "mediumblob")
-    private byte[] fileByte;
-    public FileData(String fileName, byte[] fileByte){
-        this.fileName = fileName;
-        this.fileByte = fileByte;
-    }
-    public FileData(String fileId, String fileName, String fileType, byte[] fileByte) {
-        this(fileName, fileByte);
+    public FileData(String fileId, String fileName, String fileType) {
         this.fileId = fileId;
+        this.fileName = fileName;
         this.fileType = fileType;
     }
 
+    /**
+     * Returns the key of the content in its store. Files uploaded before the stores were introduced
+     * have no key and are addressed by their file id.
+     */
+    public String resolveStorageKey() {
+        return storageKey != null ? storageKey : fileId;
+    }
 
+    public StorageType resolveStorageType() {
+        return storageType != null ? storageType : StorageType.DATABASE;
+    }
 
+    public ContentCodec resolveCodec() {
+        return codec != null ? codec : ContentCodec.GZIP;
+    }
 }
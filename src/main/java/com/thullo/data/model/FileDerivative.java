@@ -0,0 +1,45 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Links an image to a resized copy of it. The copy is an ordinary {@link FileData}, so it is stored,
+ * compressed and cached like any other file.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"originalFileId", "width"}),
+        indexes = @Index(columnList = "fileId"))
+public class FileDerivative {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String originalFileId;
+
+    private int width;
+
+    /**
+     * File id of the resized copy, {@code null} when the original is served instead because it is
+     * already narrower than the width or can't be decoded.
+     */
+    private String fileId;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public FileDerivative(String originalFileId, int width, String fileId) {
+        this.originalFileId = originalFileId;
+        this.width = width;
+        this.fileId = fileId;
+    }
+}
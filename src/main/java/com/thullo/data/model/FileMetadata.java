@@ -0,0 +1,14 @@
+package com.thullo.data.model;
+
+/**
+ * Projection of the descriptive columns of {@link FileData}, for lookups that only need to know what a file is.
+ */
+public interface FileMetadata {
+    String getFileId();
+
+    String getFileName();
+
+    String getFileType();
+
+    Long getFileSize();
+}
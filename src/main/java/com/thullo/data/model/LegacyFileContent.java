@@ -0,0 +1,31 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.sql.Blob;
+
+/**
+ * Content of files uploaded before the content was moved to a {@link com.thullo.storage.FileStore}, still kept
+ * inline in the {@code file_byte} column of {@code file_data}. It is mapped apart from {@link FileData} so that
+ * loading file metadata never reads the blob, and the blob itself is lazy through the bytecode enhancement set
+ * up in {@code build.gradle}. The column is {@code null} for new files and is cleared by the
+ * {@link com.thullo.storage.FileStorageMigrator}.
+ */
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "file_data")
+public class LegacyFileContent {
+    @Id
+    private Long id;
+
+    @Column(insertable = false, updatable = false)
+    private String fileId;
+
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "file_byte", columnDefinition = "mediumblob")
+    private Blob content;
+}
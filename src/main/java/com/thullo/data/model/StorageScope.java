@@ -0,0 +1,5 @@
+package com.thullo.data.model;
+
+public enum StorageScope {
+    BOARD, USER
+}
@@ -0,0 +1,6 @@
+package com.thullo.data.model;
+
+public enum StorageType {
+    DATABASE,
+    FILESYSTEM
+}
@@ -0,0 +1,54 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * The storage used by the attachments of a board, or by all files uploaded by a user. The counters are adjusted
+ * as attachments and files are added and deleted, so usage and quotas are checked without summing them.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"scope", "scopeKey"}))
+public class StorageUsage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private StorageScope scope;
+
+    /**
+     * The board tag or the email of the user.
+     */
+    @Column(nullable = false)
+    private String scopeKey;
+
+    private long fileCount;
+
+    /**
+     * The size of the files as uploaded.
+     */
+    private long rawBytes;
+
+    /**
+     * The size of the files as stored, after compression.
+     */
+    private long storedBytes;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public StorageUsage(StorageScope scope, String scopeKey) {
+        this.scope = scope;
+        this.scopeKey = scopeKey;
+    }
+}
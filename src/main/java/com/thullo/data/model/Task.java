@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.thullo.util.Helper;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -21,6 +22,7 @@ import java.util.Set;
 @Getter
 @Setter
 @NoArgsConstructor
+@Table(indexes = @Index(columnList = "imageFileId"))
 public class Task {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,6 +32,12 @@ public class Task {
 
     private String imageUrl;
 
+    /**
+     * Id of the file of {@link #imageUrl}, kept by its setter so a cover can be matched to its task by an index.
+     */
+    @JsonIgnore
+    private String imageFileId;
+
     private Long position;
 
     @Enumerated(EnumType.STRING)
@@ -89,4 +97,9 @@ public class Task {
         this.name = name;
 
     }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+        this.imageFileId = Helper.fileIdOf(imageUrl);
+    }
 }
@@ -0,0 +1,59 @@
+package com.thullo.data.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload of a single file sent in numbered chunks. The chunks are spooled to disk as they
+ * arrive and only the session itself is kept in the database.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class UploadSession {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String sessionId;
+
+    private String fileName;
+
+    private long fileSize;
+
+    private long chunkSize;
+
+    private int totalChunks;
+
+    private String ownerEmail;
+
+    private boolean completing;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    private LocalDateTime expiresAt;
+
+    public UploadSession(String sessionId, String fileName, long fileSize, long chunkSize, String ownerEmail) {
+        this.sessionId = sessionId;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        this.ownerEmail = ownerEmail;
+    }
+
+    /**
+     * Returns the exact number of bytes expected for the chunk, only the last chunk may be shorter.
+     */
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, fileSize - index * chunkSize);
+    }
+}
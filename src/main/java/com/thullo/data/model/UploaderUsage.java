@@ -0,0 +1,14 @@
+package com.thullo.data.model;
+
+/**
+ * Projection of the storage used by the files a user uploaded, summed over {@link FileData}.
+ */
+public interface UploaderUsage {
+    String getUploadedBy();
+
+    long getFileCount();
+
+    Long getRawBytes();
+
+    Long getStoredBytes();
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.thullo.util.Helper;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -20,7 +21,7 @@ import java.util.Objects;
 @Entity
 @Table(name = "users", uniqueConstraints = {
         @UniqueConstraint(columnNames = "email")
-})
+}, indexes = @Index(columnList = "imageFileId"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -39,6 +40,12 @@ public class User extends RepresentationModel<User> {
 
     private String imageUrl;
 
+    /**
+     * Id of the file of {@link #imageUrl}, kept by its setter so files can be matched to their users by an index.
+     */
+    @JsonIgnore
+    private String imageFileId;
+
     private String bio;
 
     private Boolean emailVerified;
@@ -74,6 +81,13 @@ public class User extends RepresentationModel<User> {
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime updatedAt;
 
+    /**
+     * Bumped by every update of the profile, used as its ETag.
+     */
+    @JsonIgnore
+    @Column(nullable = false)
+    private long version;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -91,4 +105,8 @@ public class User extends RepresentationModel<User> {
         notifications.add(notification);
     }
 
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+        this.imageFileId = Helper.fileIdOf(imageUrl);
+    }
 }
@@ -1,7 +1,36 @@
 package com.thullo.data.repository;
 
 import com.thullo.data.model.Attachment;
+import com.thullo.web.payload.response.AttachmentResponse;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
+    List<Attachment> findByTask_BoardRefOrderById(String boardRef);
+
+    List<Attachment> findByTask_Board_BoardTagOrderById(String boardTag);
+
+    List<Attachment> findByFileId(String fileId);
+
+    @Query("SELECT new com.thullo.web.payload.response.AttachmentResponse(a.task.id, a.id, a.fileName, a.fileSize, a.fileUrl, a.rawSize, " +
+            "a.storedSize, a.createdAt, a.updatedAt) FROM Attachment a WHERE a.task.board.id IN :boardIds ORDER BY a.id")
+    List<AttachmentResponse> findBoardAttachments(@Param("boardIds") Collection<Long> boardIds);
+
+    /**
+     * Finds the attachments saved with a file url before the id of the file was kept, for the backfill of the id.
+     */
+    @Query("SELECT a FROM Attachment a WHERE a.id > :afterId AND a.fileUrl IS NOT NULL AND a.fileId IS NULL ORDER BY a.id")
+    List<Attachment> findWithoutFileId(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Attachment a SET a.fileId = :fileId WHERE a.id = :id")
+    void updateFileId(@Param("id") Long id, @Param("fileId") String fileId);
 }
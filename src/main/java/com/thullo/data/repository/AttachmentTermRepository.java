@@ -0,0 +1,35 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.AttachmentTerm;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AttachmentTermRepository extends JpaRepository<AttachmentTerm, Long> {
+    /**
+     * Finds the tasks having attachments that contain every one of the terms, not necessarily in the same attachment,
+     * on the boards the user can access.
+     */
+    @Query("SELECT t.taskId FROM AttachmentTerm t WHERE t.term IN :terms " +
+            "AND t.taskId IN (SELECT task.id FROM Task task WHERE " + TaskRepository.TASK_ON_ACCESSIBLE_BOARD + ") " +
+            "GROUP BY t.taskId HAVING COUNT(DISTINCT t.term) = :termCount")
+    List<Long> findTaskIdsWithAllTerms(@Param("terms") Collection<String> terms, @Param("termCount") long termCount,
+                                       @Param("email") String email);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM AttachmentTerm t WHERE t.attachmentId = :attachmentId")
+    void deleteByAttachmentId(@Param("attachmentId") Long attachmentId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM AttachmentTerm t WHERE t.taskId = :taskId")
+    void deleteByTaskId(@Param("taskId") Long taskId);
+}
@@ -0,0 +1,7 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.BackfillProgress;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BackfillProgressRepository extends JpaRepository<BackfillProgress, String> {
+}
@@ -0,0 +1,35 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.BoardChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BoardChangeRepository extends JpaRepository<BoardChange, Long> {
+    @Query("SELECT c FROM BoardChange c WHERE c.boardTag = :boardTag AND c.version > :since ORDER BY c.version")
+    List<BoardChange> findChangesSince(@Param("boardTag") String boardTag, @Param("since") long since, Pageable pageable);
+
+    /**
+     * Returns the board tag and the latest version of every board with more than {@code maxEntries} changes.
+     */
+    @Query("SELECT c.boardTag, MAX(c.version) FROM BoardChange c GROUP BY c.boardTag HAVING COUNT(c) > :maxEntries")
+    List<Object[]> findBoardsWithMoreChangesThan(@Param("maxEntries") long maxEntries);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BoardChange c WHERE c.boardTag = :boardTag AND c.version <= :version")
+    int deleteUpTo(@Param("boardTag") String boardTag, @Param("version") long version);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BoardChange c WHERE c.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -2,12 +2,17 @@ package com.thullo.data.repository;
 
 import com.thullo.data.model.Board;
 import com.thullo.data.model.User;
+import com.thullo.web.payload.response.UserSummaryResponse;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +23,36 @@ public interface BoardRepository extends JpaRepository<Board, Long> {
 
     @Query("SELECT b FROM Board b WHERE upper(b.boardTag) = upper(?1)")
     Optional<Board> findByBoardTag(@NonNull String boardTag);
+
+    @Query("SELECT new com.thullo.web.payload.response.UserSummaryResponse(b.id, u.id, u.name, u.email, u.imageUrl, u.bio) " +
+            "FROM Board b JOIN b.collaborators u WHERE b.id IN :boardIds")
+    List<UserSummaryResponse> findCollaborators(@Param("boardIds") Collection<Long> boardIds);
+
+    @Query("SELECT b.version FROM Board b WHERE upper(b.boardTag) = upper(:boardTag)")
+    Optional<Long> findVersionByBoardTag(@Param("boardTag") String boardTag);
+
+    @Query("SELECT b.boardTag FROM Board b")
+    List<String> findAllBoardTags();
+
+    @Query("SELECT DISTINCT b.boardTag FROM Board b JOIN b.collaborators u WHERE u.email = :email")
+    List<String> findBoardTagsByCollaborator(@Param("email") String email);
+
+    /**
+     * Bumps the version of the board in a single statement, so concurrent writes to the board never share one.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Board b SET b.version = b.version + 1 WHERE b.boardTag = :boardTag")
+    int incrementVersion(@Param("boardTag") String boardTag);
+
+    /**
+     * Finds the boards saved with a file url before the id of the file was kept, for the backfill of the id.
+     */
+    @Query("SELECT b FROM Board b WHERE b.id > :afterId AND b.imageUrl IS NOT NULL AND b.imageFileId IS NULL ORDER BY b.id")
+    List<Board> findWithoutImageFileId(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Board b SET b.imageFileId = :fileId WHERE b.id = :id")
+    void updateImageFileId(@Param("id") Long id, @Param("fileId") String fileId);
 }
@@ -0,0 +1,24 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.FileBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, Long> {
+    Optional<FileBlob> findByStorageKey(String storageKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.storageKey = :storageKey")
+    Optional<FileBlob> findByStorageKeyForUpdate(@Param("storageKey") String storageKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.contentHash = :contentHash OR (b.contentHash IS NULL AND b.storageKey = :contentHash)")
+    Optional<FileBlob> findByContentHashForUpdate(@Param("contentHash") String contentHash);
+}
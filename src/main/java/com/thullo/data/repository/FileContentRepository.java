@@ -0,0 +1,21 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.FileContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Blob;
+import java.util.Optional;
+
+@Repository
+public interface FileContentRepository extends JpaRepository<FileContent, Long> {
+    @Query("SELECT c.content FROM FileContent c WHERE c.storageKey = :storageKey")
+    Optional<Blob> findContentByStorageKey(@Param("storageKey") String storageKey);
+
+    @Modifying
+    @Query("DELETE FROM FileContent c WHERE c.storageKey = :storageKey")
+    void deleteByStorageKey(@Param("storageKey") String storageKey);
+}
@@ -0,0 +1,17 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.FileDerivative;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileDerivativeRepository extends JpaRepository<FileDerivative, Long> {
+    Optional<FileDerivative> findByOriginalFileIdAndWidth(String originalFileId, int width);
+
+    List<FileDerivative> findByOriginalFileId(String originalFileId);
+
+    boolean existsByOriginalFileIdAndWidth(String originalFileId, int width);
+}
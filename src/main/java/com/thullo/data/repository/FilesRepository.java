@@ -1,12 +1,74 @@
 package com.thullo.data.repository;
 
 import com.thullo.data.model.FileData;
+import com.thullo.data.model.FileMetadata;
+import com.thullo.data.model.StorageType;
+import com.thullo.data.model.UploaderUsage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface FilesRepository extends JpaRepository<FileData, Long> {
     Optional<FileData> findFileDataByFileId(String fileId);
-}
\ No newline at end of file
+
+    Optional<FileMetadata> findMetadataByFileId(String fileId);
+
+    Optional<FileData> findFirstByContentHashAndFileSize(String contentHash, Long fileSize);
+
+    @Query("SELECT f.uploadedBy AS uploadedBy, COUNT(f) AS fileCount, SUM(f.fileSize) AS rawBytes, " +
+            "SUM(f.compressedSize) AS storedBytes FROM FileData f WHERE f.uploadedBy IS NOT NULL GROUP BY f.uploadedBy")
+    List<UploaderUsage> sumUsageByUploader();
+
+    @Query("SELECT f.id FROM FileData f WHERE f.id > :afterId AND (f.storageType IS NULL OR f.storageType <> :storageType) ORDER BY f.id")
+    List<Long> findIdsNotStoredIn(@Param("storageType") StorageType storageType, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Finds files whose content is not in the tier for its stored size, including content stored inline
+     * before its size was recorded.
+     */
+    @Query("SELECT f.id FROM FileData f WHERE f.id > :afterId AND (" +
+            "(f.compressedSize IS NULL AND f.storageType IS NULL) OR " +
+            "(f.compressedSize <= :smallMaxBytes AND (f.storageType IS NULL OR f.storageType <> :smallType)) OR " +
+            "(f.compressedSize > :smallMaxBytes AND (f.storageType IS NULL OR f.storageType <> :largeType))) ORDER BY f.id")
+    List<Long> findIdsOutsideTier(@Param("smallMaxBytes") long smallMaxBytes, @Param("smallType") StorageType smallType,
+                                  @Param("largeType") StorageType largeType, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT f.id FROM FileData f WHERE f.id > :afterId AND (f.createdAt IS NULL OR f.createdAt < :createdBefore) ORDER BY f.id")
+    List<Long> findIdsCreatedBefore(@Param("afterId") Long afterId, @Param("createdBefore") LocalDateTime createdBefore, Pageable pageable);
+
+    /**
+     * Returns the files among the given ones whose id is not the file id of any board, task, user or attachment
+     * and that are not a thumbnail of another file. Every lookup is on an indexed file id column.
+     */
+    @Query("SELECT f FROM FileData f WHERE f.id IN :ids"
+            + " AND NOT EXISTS (SELECT b.id FROM Board b WHERE b.imageFileId = f.fileId)"
+            + " AND NOT EXISTS (SELECT t.id FROM Task t WHERE t.imageFileId = f.fileId)"
+            + " AND NOT EXISTS (SELECT u.id FROM User u WHERE u.imageFileId = f.fileId)"
+            + " AND NOT EXISTS (SELECT a.id FROM Attachment a WHERE a.fileId = f.fileId)"
+            + " AND NOT EXISTS (SELECT d.id FROM FileDerivative d WHERE d.fileId = f.fileId)")
+    List<FileData> findUnreferenced(@Param("ids") List<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileData f SET f.storageKey = :storageKey, f.storageType = :storageType WHERE f.id = :id")
+    void updateStorage(@Param("id") Long id, @Param("storageKey") String storageKey, @Param("storageType") StorageType storageType);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileData f SET f.storageType = :storageType WHERE f.storageKey = :storageKey")
+    void updateStorageByKey(@Param("storageKey") String storageKey, @Param("storageType") StorageType storageType);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FileData f WHERE f.fileId = :fileId")
+    int deleteByFileId(@Param("fileId") String fileId);
+}
@@ -0,0 +1,23 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.LegacyFileContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Blob;
+import java.util.Optional;
+
+@Repository
+public interface LegacyFileContentRepository extends JpaRepository<LegacyFileContent, Long> {
+    @Query("SELECT c.content FROM LegacyFileContent c WHERE c.fileId = :fileId AND c.content IS NOT NULL")
+    Optional<Blob> findContentByFileId(@Param("fileId") String fileId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE LegacyFileContent c SET c.content = NULL WHERE c.fileId = :fileId")
+    void clearContent(@Param("fileId") String fileId);
+}
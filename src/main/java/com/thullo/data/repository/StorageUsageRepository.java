@@ -0,0 +1,27 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.StorageScope;
+import com.thullo.data.model.StorageUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, Long> {
+    Optional<StorageUsage> findByScopeAndScopeKey(StorageScope scope, String scopeKey);
+
+    /**
+     * Adds to the counters of a scope in a single statement, returns {@code 0} when the scope has no counters yet.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE StorageUsage u SET u.fileCount = u.fileCount + :files, u.rawBytes = u.rawBytes + :rawBytes, " +
+            "u.storedBytes = u.storedBytes + :storedBytes WHERE u.scope = :scope AND u.scopeKey = :scopeKey")
+    int addUsage(@Param("scope") StorageScope scope, @Param("scopeKey") String scopeKey, @Param("files") long files,
+                 @Param("rawBytes") long rawBytes, @Param("storedBytes") long storedBytes);
+}
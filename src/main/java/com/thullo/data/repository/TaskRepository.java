@@ -3,23 +3,69 @@ package com.thullo.data.repository;
 import com.thullo.data.model.Board;
 import com.thullo.data.model.Status;
 import com.thullo.data.model.Task;
+import com.thullo.web.payload.response.BoardTaskResponse;
+import com.thullo.web.payload.response.LabelResponse;
+import com.thullo.web.payload.response.UserSummaryResponse;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TaskRepository extends JpaRepository<Task, Long> {
-    @Query("SELECT t FROM Task t WHERE t.name LIKE %:params% OR t.boardRef LIKE %:params%")
-    List<Task> findByParams(@Param("params") String params);
+    /**
+     * Matches a {@code task} on a board the user with {@code :email} owns, collaborates on or contributes to a
+     * task of.
+     */
+    String TASK_ON_ACCESSIBLE_BOARD = "(task.board IN (SELECT b FROM Board b LEFT JOIN b.collaborators c " +
+            "WHERE b.user.email = :email OR c.email = :email) " +
+            "OR task.board IN (SELECT ct.board FROM Task ct JOIN ct.contributors u WHERE u.email = :email))";
+
+    @Query("SELECT task FROM Task task WHERE (task.name LIKE %:params% OR task.boardRef LIKE %:params%) " +
+            "AND " + TASK_ON_ACCESSIBLE_BOARD)
+    List<Task> findByParams(@Param("params") String params, @Param("email") String email);
 
     Optional<Task> findByBoardRef(@NonNull String boardRef);
 
+    @Query("SELECT t.board.version FROM Task t WHERE t.boardRef = :boardRef")
+    Optional<Long> findBoardVersionByBoardRef(@Param("boardRef") String boardRef);
+
+    @Query("SELECT DISTINCT t.board.boardTag FROM Task t LEFT JOIN t.contributors u LEFT JOIN t.createdBy c " +
+            "WHERE u.email = :email OR c.email = :email")
+    List<String> findBoardTagsByContributorOrCreator(@Param("email") String email);
+
     long countByBoardAndStatus(Board board, Status status);
 
     List<Task> findAllByBoardAndStatus(Board board, Status status);
+
+    @Query("SELECT new com.thullo.web.payload.response.BoardTaskResponse(t.board.id, t.id, t.name, t.imageUrl, t.position, t.status, " +
+            "t.boardRef, t.description, t.createdAt, t.updatedAt) FROM Task t WHERE t.board.id IN :boardIds ORDER BY t.position")
+    List<BoardTaskResponse> findBoardTasks(@Param("boardIds") Collection<Long> boardIds);
+
+    @Query("SELECT new com.thullo.web.payload.response.UserSummaryResponse(t.id, u.id, u.name, u.email, u.imageUrl, u.bio) " +
+            "FROM Task t JOIN t.contributors u WHERE t.board.id IN :boardIds")
+    List<UserSummaryResponse> findBoardTaskContributors(@Param("boardIds") Collection<Long> boardIds);
+
+    @Query("SELECT new com.thullo.web.payload.response.LabelResponse(t.id, l.id, l.name, l.colorCode, l.backgroundCode, l.createdAt, l.updatedAt) " +
+            "FROM Task t JOIN t.labels l WHERE t.board.id IN :boardIds")
+    List<LabelResponse> findBoardTaskLabels(@Param("boardIds") Collection<Long> boardIds);
+
+    /**
+     * Finds the tasks saved with a file url before the id of the file was kept, for the backfill of the id.
+     */
+    @Query("SELECT t FROM Task t WHERE t.id > :afterId AND t.imageUrl IS NOT NULL AND t.imageFileId IS NULL ORDER BY t.id")
+    List<Task> findWithoutImageFileId(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Task t SET t.imageFileId = :fileId WHERE t.id = :id")
+    void updateImageFileId(@Param("id") Long id, @Param("fileId") String fileId);
 }
@@ -0,0 +1,38 @@
+package com.thullo.data.repository;
+
+import com.thullo.data.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    Optional<UploadSession> findBySessionId(String sessionId);
+
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime time);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.expiresAt = :expiresAt WHERE s.sessionId = :sessionId")
+    void updateExpiresAt(@Param("sessionId") String sessionId, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Marks the session as completing, returns {@code 0} when another request is already completing it.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.completing = true WHERE s.sessionId = :sessionId AND s.completing = false")
+    int markCompleting(@Param("sessionId") String sessionId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.completing = false WHERE s.sessionId = :sessionId")
+    void clearCompleting(@Param("sessionId") String sessionId);
+}
@@ -1,10 +1,13 @@
 package com.thullo.data.repository;
 
 import com.thullo.data.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -20,7 +23,21 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
 
+    @Query("SELECT u.version FROM User u WHERE u.email = :email")
+    Optional<Long> findVersionByEmail(@Param("email") String email);
+
     User findUserByEmail(String email);
 
     Boolean existsByEmail(String email);
+
+    /**
+     * Finds the users saved with a file url before the id of the file was kept, for the backfill of the id.
+     */
+    @Query("SELECT u FROM User u WHERE u.id > :afterId AND u.imageUrl IS NOT NULL AND u.imageFileId IS NULL ORDER BY u.id")
+    List<User> findWithoutImageFileId(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.imageFileId = :fileId WHERE u.id = :id")
+    void updateImageFileId(@Param("id") Long id, @Param("fileId") String fileId);
 }
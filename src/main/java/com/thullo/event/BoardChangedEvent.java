@@ -0,0 +1,19 @@
+package com.thullo.event;
+
+import com.thullo.data.model.BoardChange;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published after a change to a board, its tasks or anything else shown in the view of the board.
+ */
+@Getter
+@RequiredArgsConstructor
+public class BoardChangedEvent {
+    private final String boardTag;
+    /**
+     * The version of the board after the change.
+     */
+    private final long version;
+    private final BoardChange change;
+}
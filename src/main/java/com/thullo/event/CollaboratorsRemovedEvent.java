@@ -0,0 +1,16 @@
+package com.thullo.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * Published when users have been removed as collaborators of a board.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CollaboratorsRemovedEvent {
+    private final String boardTag;
+    private final Set<String> emails;
+}
@@ -0,0 +1,16 @@
+package com.thullo.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published after a file and its metadata have been deleted.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FileDeletedEvent {
+    private final String fileId;
+    private final String uploadedBy;
+    private final long fileSize;
+    private final Long compressedSize;
+}
@@ -0,0 +1,17 @@
+package com.thullo.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published once a file uploaded by a client has been stored.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FileUploadedEvent {
+    private final String fileId;
+    private final String fileType;
+    private final String uploadedBy;
+    private final long fileSize;
+    private final Long compressedSize;
+}
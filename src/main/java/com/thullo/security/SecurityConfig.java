@@ -6,6 +6,7 @@ import com.thullo.security.oauth2.OAuth2AuthenticationFailureHandler;
 import com.thullo.security.oauth2.OAuth2AuthenticationSuccessHandler;
 import com.thullo.security.oauth2.Oauth2CustomUserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -14,6 +15,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.util.unit.DataSize;
 
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(
@@ -27,6 +29,8 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    private final UploadAdmissionControl uploadAdmissionControl;
+
     private final Oauth2CustomUserService customOAuth2UserService;
 
     private final OAuth2AuthenticationSuccessHandler oAuth2AuthenticationSuccessHandler;
@@ -51,7 +55,8 @@ public class SecurityConfig {
 
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http,
+                                           @Value("${spring.servlet.multipart.max-request-size:10MB}") DataSize maxRequestSize) throws Exception {
         http
                 .cors()
                 .and()
@@ -86,6 +91,7 @@ public class SecurityConfig {
                 .failureHandler(oAuth2AuthenticationFailureHandler);
 
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(new UploadAdmissionFilter(uploadAdmissionControl, maxRequestSize.toBytes()), JwtAuthenticationFilter.class);
         return http.build();
     }
 
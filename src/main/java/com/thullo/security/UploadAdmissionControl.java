@@ -0,0 +1,143 @@
+package com.thullo.security;
+
+import com.thullo.web.exception.UploadRejectedException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the bytes of uploads the node receives at the same time, in total to
+ * {@code app.upload.admission.max-bytes} and per user to {@code app.upload.admission.user-max-bytes}, so a burst
+ * of large uploads can't exhaust the memory and the multipart spool of the node. An upload that doesn't fit
+ * waits up to {@code app.upload.admission.max-wait-ms} for earlier uploads to finish before it is rejected.
+ * <p>
+ * A single upload larger than a budget is admitted once nothing else holds that budget, rather than never.
+ */
+@Component
+public class UploadAdmissionControl {
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long userMaxBytes;
+    private final long maxWaitNanos;
+    private final long retryAfterSeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Long> userBytes = new HashMap<>();
+    private long inFlightBytes;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public UploadAdmissionControl(@Value("${app.upload.admission.enabled:true}") boolean enabled,
+                                  @Value("${app.upload.admission.max-bytes:67108864}") long maxBytes,
+                                  @Value("${app.upload.admission.user-max-bytes:20971520}") long userMaxBytes,
+                                  @Value("${app.upload.admission.max-wait-ms:2000}") long maxWaitMillis,
+                                  @Value("${app.upload.admission.retry-after-seconds:2}") long retryAfterSeconds) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.userMaxBytes = userMaxBytes;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Reserves budget for an upload, waiting for it when the budget is used up by other uploads.
+     *
+     * @param user  the user sending the upload
+     * @param bytes the size of the upload
+     * @return the reservation, to be released once the upload has been handled
+     * @throws UploadRejectedException with 429 when the budget of the user wasn't available in time, and with
+     *                                 503 when the budget of the node wasn't
+     */
+    public Reservation reserve(String user, long bytes) throws InterruptedException {
+        if (!enabled) return new Reservation(user, 0);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        boolean waited = false;
+        lock.lock();
+        try {
+            while (!fits(user, bytes)) {
+                if (!waited) {
+                    queued.increment();
+                    waited = true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected.increment();
+                    if (!fitsUserBudget(user, bytes)) {
+                        throw new UploadRejectedException("Too many uploads in progress for this user, try again later",
+                                HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds);
+                    }
+                    throw new UploadRejectedException("Too many uploads in progress, try again later",
+                            HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+                }
+                released.awaitNanos(remaining);
+            }
+            inFlightBytes += bytes;
+            userBytes.merge(user, bytes, Long::sum);
+            admitted.increment();
+            return new Reservation(user, bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Reservation reservation) {
+        if (reservation.bytes == 0) return;
+        lock.lock();
+        try {
+            inFlightBytes -= reservation.bytes;
+            userBytes.computeIfPresent(reservation.user, (user, bytes) -> bytes == reservation.bytes ? null : bytes - reservation.bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(inFlightBytes, maxBytes, maxBytes > 0 ? (double) inFlightBytes / maxBytes : 0,
+                    userBytes.size(), admitted.sum(), queued.sum(), rejected.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(String user, long bytes) {
+        return (inFlightBytes == 0 || inFlightBytes + bytes <= maxBytes) && fitsUserBudget(user, bytes);
+    }
+
+    private boolean fitsUserBudget(String user, long bytes) {
+        long used = userBytes.getOrDefault(user, 0L);
+        return used == 0 || used + bytes <= userMaxBytes;
+    }
+
+    @RequiredArgsConstructor
+    public static class Reservation {
+        private final String user;
+        private final long bytes;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Stats {
+        private final long inFlightBytes;
+        private final long maxBytes;
+        private final double utilisation;
+        private final int users;
+        private final long admitted;
+        private final long queued;
+        private final long rejected;
+    }
+}
@@ -0,0 +1,82 @@
+package com.thullo.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thullo.web.exception.UploadRejectedException;
+import com.thullo.web.payload.response.ErrorResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admits multipart and raw binary uploads through the {@link UploadAdmissionControl} before their body is read,
+ * reserving their {@code Content-Length} against the budget of the node and of the authenticated user. Uploads
+ * without a length reserve the largest request the node accepts.
+ * <p>
+ * It runs in the security filter chain after the user is authenticated, and is not a bean so it isn't also
+ * registered with the servlet container ahead of authentication.
+ */
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+    private final UploadAdmissionControl uploadAdmissionControl;
+    private final long unknownLengthBytes;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public UploadAdmissionFilter(UploadAdmissionControl uploadAdmissionControl, long unknownLengthBytes) {
+        this.uploadAdmissionControl = uploadAdmissionControl;
+        this.unknownLengthBytes = unknownLengthBytes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null || "GET".equals(request.getMethod())) return true;
+        String type = contentType.toLowerCase();
+        return !type.startsWith("multipart/") && !type.startsWith(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        UploadAdmissionControl.Reservation reservation;
+        try {
+            reservation = uploadAdmissionControl.reserve(getUser(request), contentLength >= 0 ? contentLength : unknownLengthBytes);
+        } catch (UploadRejectedException ex) {
+            reject(response, ex);
+            return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(ex);
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            uploadAdmissionControl.release(reservation);
+        }
+    }
+
+    private String getUser(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
+            return ((UserPrincipal) authentication.getPrincipal()).getEmail();
+        }
+        return request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, UploadRejectedException ex) throws IOException {
+        response.setStatus(ex.getStatus().value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        ErrorResponse error = new ErrorResponse(ex.getStatus().value(), ex.getMessage());
+        response.getOutputStream().println(objectMapper.writeValueAsString(error));
+    }
+}
@@ -6,7 +6,10 @@ import com.thullo.data.repository.RoleRepository;
 import com.thullo.data.repository.UserRepository;
 import com.thullo.security.UserPrincipal;
 import com.thullo.security.oauth2.user.Oauth2UserData;
+import com.thullo.service.UserService;
 import com.thullo.web.exception.OAuth2AuthenticationProcessingException;
+import com.thullo.web.exception.UserException;
+import com.thullo.web.payload.request.UserProfileRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
@@ -16,6 +19,7 @@ import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 import static com.thullo.security.oauth2.user.OAuth2UserDataFactory.getOauth2UserData;
@@ -26,6 +30,7 @@ import static com.thullo.security.oauth2.user.OAuth2UserDataFactory.getOauth2Use
 public class Oauth2CustomUserService extends DefaultOAuth2UserService {
 
     private final UserRepository userRepository;
+    private final UserService userService;
 
 
     @Override
@@ -39,7 +44,7 @@ public class Oauth2CustomUserService extends DefaultOAuth2UserService {
         }
     }
 
-    private OAuth2User processOAuth2User(OAuth2UserRequest userRequest, OAuth2User oAuth2User) {
+    private OAuth2User processOAuth2User(OAuth2UserRequest userRequest, OAuth2User oAuth2User) throws UserException {
         Oauth2UserData oauth2UserData = getOauth2UserData(userRequest.getClientRegistration().getRegistrationId(), oAuth2User.getAttributes());
 
         if (oauth2UserData != null && oauth2UserData.getEmail().isEmpty()) {
@@ -74,10 +79,23 @@ public class Oauth2CustomUserService extends DefaultOAuth2UserService {
         return userRepository.save(userToSave);
     }
 
-    private User updateExistingUser(User existingUser, Oauth2UserData oauth2UserData) {
-        existingUser.setName(oauth2UserData.getName());
-        existingUser.setImageUrl(oauth2UserData.getImageUrl());
-        return userRepository.save(existingUser);
+    /**
+     * Takes the name and the image of the user from the provider when they have changed, through the same update
+     * as an edit of the profile, so the version of the profile and of the boards showing the user move with it.
+     * A login that changes nothing writes nothing.
+     */
+    private User updateExistingUser(User existingUser, Oauth2UserData oauth2UserData) throws UserException {
+        UserProfileRequest profileRequest = new UserProfileRequest();
+        if (isChanged(existingUser.getName(), oauth2UserData.getName())) profileRequest.setName(oauth2UserData.getName());
+        if (isChanged(existingUser.getImageUrl(), oauth2UserData.getImageUrl())) profileRequest.setImageUrl(oauth2UserData.getImageUrl());
+        if (profileRequest.getName() == null && profileRequest.getImageUrl() == null) return existingUser;
+
+        userService.updateUserDetails(profileRequest, existingUser.getEmail());
+        return userRepository.findByEmail(existingUser.getEmail()).orElse(existingUser);
+    }
+
+    private boolean isChanged(String current, String fromProvider) {
+        return fromProvider != null && !Objects.equals(current, fromProvider);
     }
 
 
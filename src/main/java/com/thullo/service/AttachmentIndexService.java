@@ -0,0 +1,24 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+
+import java.util.List;
+
+public interface AttachmentIndexService {
+    /**
+     * Schedules the text of the attachment to be extracted and indexed, when it is of a text type. Attachments
+     * whose file is still being stored are indexed once it is stored.
+     */
+    void index(Attachment attachment);
+
+    void removeAttachment(Long attachmentId);
+
+    void removeTask(Long taskId);
+
+    /**
+     * Finds the tasks whose attachments contain every word of the query, on the boards the user can access.
+     *
+     * @return the ids of the tasks, empty when the query has no words
+     */
+    List<Long> findTaskIds(String query, String email);
+}
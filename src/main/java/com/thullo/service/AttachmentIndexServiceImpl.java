@@ -0,0 +1,245 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.AttachmentTerm;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.AttachmentTermRepository;
+import com.thullo.event.FileUploadedEvent;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.thullo.util.Helper.extractFileIdFromUrl;
+
+/**
+ * Indexes the words of text attachments on the index executor, after the attachment is saved. The text is
+ * streamed from the store through a decoder that splits it into words as it arrives, and only the first
+ * {@code app.files.text-index.max-bytes} bytes and {@code app.files.text-index.max-terms} distinct words of an
+ * attachment are indexed, so neither indexing nor searching ever holds a whole file in memory.
+ */
+@Slf4j
+@Service
+public class AttachmentIndexServiceImpl implements AttachmentIndexService {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private final FileService fileService;
+    private final UploadIngestor uploadIngestor;
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentTermRepository attachmentTermRepository;
+    private final TaskExecutor indexExecutor;
+    private final boolean enabled;
+    private final Set<String> textTypes;
+    private final long maxBytes;
+    private final int maxTerms;
+    private final Set<Long> inProgress = ConcurrentHashMap.newKeySet();
+
+    public AttachmentIndexServiceImpl(FileService fileService, UploadIngestor uploadIngestor,
+                                      AttachmentRepository attachmentRepository,
+                                      AttachmentTermRepository attachmentTermRepository,
+                                      @Qualifier("indexExecutor") TaskExecutor indexExecutor,
+                                      @Value("${app.files.text-index.enabled:true}") boolean enabled,
+                                      @Value("${app.files.text-index.types:txt,csv,json,xml}") String[] textTypes,
+                                      @Value("${app.files.text-index.max-bytes:1048576}") long maxBytes,
+                                      @Value("${app.files.text-index.max-terms:1000}") int maxTerms) {
+        this.fileService = fileService;
+        this.uploadIngestor = uploadIngestor;
+        this.attachmentRepository = attachmentRepository;
+        this.attachmentTermRepository = attachmentTermRepository;
+        this.indexExecutor = indexExecutor;
+        this.enabled = enabled;
+        this.textTypes = Arrays.stream(textTypes)
+                .map(type -> type.trim().toLowerCase())
+                .collect(Collectors.toSet());
+        this.maxBytes = maxBytes;
+        this.maxTerms = maxTerms;
+    }
+
+    @Override
+    public void index(Attachment attachment) {
+        String fileName = attachment.getFileName();
+        if (fileName != null && isText(fileName.substring(fileName.lastIndexOf(".") + 1))) {
+            schedule(attachment.getId());
+        }
+    }
+
+    /**
+     * Indexes attachments whose file was still being stored in the background when they were saved.
+     */
+    @EventListener
+    public void onFileUploaded(FileUploadedEvent event) {
+        if (!uploadIngestor.isEnabled() || !isText(event.getFileType())) return;
+        attachmentRepository.findByFileId(event.getFileId()).forEach(attachment -> schedule(attachment.getId()));
+    }
+
+    @Override
+    public void removeAttachment(Long attachmentId) {
+        attachmentTermRepository.deleteByAttachmentId(attachmentId);
+    }
+
+    @Override
+    public void removeTask(Long taskId) {
+        attachmentTermRepository.deleteByTaskId(taskId);
+    }
+
+    @Override
+    public List<Long> findTaskIds(String query, String email) {
+        TermCollector collector = new TermCollector(maxTerms);
+        collector.write(query.getBytes(StandardCharsets.UTF_8));
+        collector.close();
+        Set<String> terms = collector.getTerms();
+        if (terms.isEmpty()) return List.of();
+        return attachmentTermRepository.findTaskIdsWithAllTerms(terms, terms.size(), email);
+    }
+
+    private boolean isText(String fileType) {
+        return enabled && fileType != null && textTypes.contains(fileType.toLowerCase());
+    }
+
+    private void schedule(Long attachmentId) {
+        if (!inProgress.add(attachmentId)) return;
+        try {
+            indexExecutor.execute(() -> {
+                try {
+                    extract(attachmentId);
+                } finally {
+                    inProgress.remove(attachmentId);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            inProgress.remove(attachmentId);
+            log.warn("Index queue is full, skipped attachment {}", attachmentId);
+        }
+    }
+
+    private void extract(Long attachmentId) {
+        try {
+            Attachment attachment = attachmentRepository.findById(attachmentId).orElse(null);
+            if (attachment == null) return;
+            String fileId = attachment.getFileId() != null ? attachment.getFileId() : extractFileIdFromUrl(attachment.getFileUrl());
+            // indexed once stored when the file is still being stored in the background
+            if (fileService.getFileMetadata(fileId) == null) return;
+
+            TermCollector collector = new TermCollector(maxTerms);
+            try (collector) {
+                fileService.writeFile(fileId, 0, maxBytes, collector);
+            }
+            Long taskId = attachment.getTask().getId();
+            attachmentTermRepository.deleteByAttachmentId(attachmentId);
+            attachmentTermRepository.saveAll(collector.getTerms().stream()
+                    .map(term -> new AttachmentTerm(term, attachmentId, taskId))
+                    .collect(Collectors.toList()));
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to index attachment {}", attachmentId, ex);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 text written to it one buffer at a time and collects the distinct lower case words of
+     * letters and digits, up to a maximum number of words. Malformed input is replaced rather than rejected,
+     * as is a character split by the end of the capped content.
+     */
+    static class TermCollector extends OutputStream {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final StringBuilder word = new StringBuilder();
+        @Getter
+        private final Set<String> terms = new LinkedHashSet<>();
+        private final int maxTerms;
+        private boolean closed;
+
+        TermCollector(int maxTerms) {
+            this.maxTerms = maxTerms;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int count = Math.min(len, bytes.remaining());
+                bytes.put(b, off, count);
+                off += count;
+                len -= count;
+                bytes.flip();
+                decode(false);
+                // keeps the bytes of a character split between writes
+                bytes.compact();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            bytes.flip();
+            decode(true);
+            while (decoder.flush(chars).isOverflow()) {
+                drain();
+            }
+            drain();
+            addWord();
+        }
+
+        private void decode(boolean endOfInput) {
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                drain();
+            } while (result.isOverflow());
+        }
+
+        private void drain() {
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (Character.isLetterOrDigit(c)) {
+                    if (word.length() <= MAX_TERM_LENGTH) word.append(c);
+                } else {
+                    addWord();
+                }
+            }
+            chars.clear();
+        }
+
+        private void addWord() {
+            if (word.length() >= MIN_TERM_LENGTH && word.length() <= MAX_TERM_LENGTH && terms.size() < maxTerms) {
+                terms.add(word.toString().toLowerCase(Locale.ROOT));
+            }
+            word.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.thullo.service;
+
+import com.thullo.data.model.BoardChangeType;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.response.BoardChangesResponse;
+
+public interface BoardChangeService {
+    /**
+     * Bumps the version of the board after a write to it or to anything shown on it, records the change in the
+     * change log of the board, and publishes a {@link com.thullo.event.BoardChangedEvent}. Must be called once
+     * the write is saved, in the transaction of the write when it has one.
+     *
+     * @param ref    the board ref of the changed task, or the email of the changed user
+     * @param detail the id of the changed label, comment or attachment, or the column and position a task moved to
+     * @return the new version of the board
+     */
+    long boardChanged(String boardTag, BoardChangeType type, String ref, String detail);
+
+    /**
+     * Bumps the version of every board the user collaborates on or has tasks on, after the profile of the user
+     * changed.
+     */
+    void userChanged(String email);
+
+    /**
+     * Bumps the version of every board.
+     */
+    void allBoardsChanged();
+
+    /**
+     * @return the version of the board, or {@code null} when there is no such board
+     */
+    Long getBoardVersion(String boardTag);
+
+    /**
+     * @return the version of the board of the task, or {@code null} when there is no such task
+     */
+    Long getTaskVersion(String boardRef);
+
+    /**
+     * Returns the changes of the board after the given version, or asks for a resync when some of them have
+     * been compacted away or there are too many to be worth replaying.
+     */
+    BoardChangesResponse getChanges(String boardTag, long since) throws BadRequestException;
+}
@@ -0,0 +1,130 @@
+package com.thullo.service;
+
+import com.thullo.data.model.BoardChange;
+import com.thullo.data.model.BoardChangeType;
+import com.thullo.data.repository.BoardChangeRepository;
+import com.thullo.data.repository.BoardRepository;
+import com.thullo.data.repository.TaskRepository;
+import com.thullo.event.BoardChangedEvent;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.response.BoardChangesResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Versions boards for conditional requests and the read model, and keeps the change log of every board for
+ * clients syncing the changes since the version they have. A version is only bumped after the write it stands
+ * for is saved, and read before the board is, so a response is never tagged with a newer version than its
+ * content. The bump locks the row of the board until the transaction ends, so the changes of a board are
+ * logged in the order of their versions.
+ * <p>
+ * The log is compacted to the last {@code app.boards.change-log.max-entries} changes of every board, none older
+ * than {@code app.boards.change-log.retention-hours}.
+ */
+@Slf4j
+@Service
+public class BoardChangeServiceImpl implements BoardChangeService {
+    private final BoardRepository boardRepository;
+    private final TaskRepository taskRepository;
+    private final BoardChangeRepository boardChangeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxEntries;
+    private final long retentionHours;
+    private final int maxChanges;
+
+    public BoardChangeServiceImpl(BoardRepository boardRepository, TaskRepository taskRepository,
+                                  BoardChangeRepository boardChangeRepository, ApplicationEventPublisher eventPublisher,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${app.boards.change-log.max-entries:1000}") int maxEntries,
+                                  @Value("${app.boards.change-log.retention-hours:168}") long retentionHours,
+                                  @Value("${app.boards.change-log.max-changes:200}") int maxChanges) {
+        this.boardRepository = boardRepository;
+        this.taskRepository = taskRepository;
+        this.boardChangeRepository = boardChangeRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.maxEntries = maxEntries;
+        this.retentionHours = retentionHours;
+        this.maxChanges = maxChanges;
+    }
+
+    @Override
+    @Transactional
+    public long boardChanged(String boardTag, BoardChangeType type, String ref, String detail) {
+        boardRepository.incrementVersion(boardTag);
+        long version = boardRepository.findVersionByBoardTag(boardTag).orElse(0L);
+        BoardChange change = boardChangeRepository.save(new BoardChange(boardTag, version, type, ref, detail));
+        eventPublisher.publishEvent(new BoardChangedEvent(boardTag, version, change));
+        return version;
+    }
+
+    /**
+     * Bumps every board in its own transaction, the calls of this bean to {@link #boardChanged} don't pass the
+     * transactional proxy.
+     */
+    @Override
+    public void userChanged(String email) {
+        Set<String> boardTags = new TreeSet<>(boardRepository.findBoardTagsByCollaborator(email));
+        boardTags.addAll(taskRepository.findBoardTagsByContributorOrCreator(email));
+        boardTags.forEach(boardTag -> transactionTemplate.execute(tx ->
+                boardChanged(boardTag, BoardChangeType.USER_UPDATED, email, null)));
+    }
+
+    @Override
+    public void allBoardsChanged() {
+        boardRepository.findAllBoardTags().forEach(boardTag -> transactionTemplate.execute(tx ->
+                boardChanged(boardTag, BoardChangeType.BOARD_REFRESHED, null, null)));
+    }
+
+    @Override
+    public Long getBoardVersion(String boardTag) {
+        return boardRepository.findVersionByBoardTag(boardTag).orElse(null);
+    }
+
+    @Override
+    public Long getTaskVersion(String boardRef) {
+        return taskRepository.findBoardVersionByBoardRef(boardRef).orElse(null);
+    }
+
+    @Override
+    public BoardChangesResponse getChanges(String boardTag, long since) throws BadRequestException {
+        Long version = getBoardVersion(boardTag);
+        if (version == null) throw new BadRequestException("Board not found");
+        if (since == version) return new BoardChangesResponse(version, false, new ArrayList<>());
+        if (since > version || version - since > maxChanges) return new BoardChangesResponse(version, true, new ArrayList<>());
+
+        List<BoardChange> logged = boardChangeRepository.findChangesSince(boardTag.toUpperCase(), since, PageRequest.of(0, maxChanges));
+        if (logged.isEmpty() || logged.get(0).getVersion() != since + 1) {
+            return new BoardChangesResponse(version, true, new ArrayList<>());
+        }
+        // changes still being committed may leave a gap, the client gets the changes before it and asks again
+        List<BoardChange> changes = new ArrayList<>();
+        for (BoardChange change : logged) {
+            if (change.getVersion() != since + changes.size() + 1) break;
+            changes.add(change);
+        }
+        return new BoardChangesResponse(changes.get(changes.size() - 1).getVersion(), false, changes);
+    }
+
+    @Scheduled(fixedDelayString = "${app.boards.change-log.compaction-delay-ms:600000}")
+    public void compact() {
+        int deleted = boardChangeRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(retentionHours));
+        for (Object[] board : boardChangeRepository.findBoardsWithMoreChangesThan(maxEntries)) {
+            deleted += boardChangeRepository.deleteUpTo((String) board[0], (Long) board[1] - maxEntries);
+        }
+        if (deleted > 0) log.info("Compacted {} board changes", deleted);
+    }
+}
@@ -0,0 +1,268 @@
+package com.thullo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thullo.event.BoardChangedEvent;
+import com.thullo.event.CollaboratorsRemovedEvent;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the changes of boards to the clients subscribed to them over server-sent events, once the transaction
+ * of the change has committed. A connection is an asynchronous request, so no servlet thread is held while it
+ * is idle; writes are made by the few threads of the {@code boardEventExecutor}, one write at a time per
+ * connection, so the thread committing a change never waits for a client.
+ * <p>
+ * Every connection buffers at most {@code app.boards.events.buffer-size} events. A client that falls further
+ * behind is disconnected, and catches up through the change log with the id of the last event it got. At most
+ * {@code app.boards.events.max-connections} connections are accepted per node.
+ */
+@Slf4j
+@Component
+public class BoardEventHub {
+    private static final String CHANGE_EVENT = "change";
+
+    private final TaskExecutor boardEventExecutor;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMillis;
+    private final int maxConnections;
+    private final int bufferSize;
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public BoardEventHub(@Qualifier("boardEventExecutor") TaskExecutor boardEventExecutor, ObjectMapper objectMapper,
+                         @Value("${app.boards.events.timeout-ms:1800000}") long timeoutMillis,
+                         @Value("${app.boards.events.max-connections:30000}") int maxConnections,
+                         @Value("${app.boards.events.buffer-size:64}") int bufferSize) {
+        this.boardEventExecutor = boardEventExecutor;
+        this.objectMapper = objectMapper;
+        this.timeoutMillis = timeoutMillis;
+        this.maxConnections = maxConnections;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Subscribes the user to the changes of the board, starting with a {@code version} event carrying the current
+     * version of the board, from which the client can fetch the changes it missed. The version is read once the
+     * connection is subscribed, so every later change is sent; changes the version already covers are skipped.
+     *
+     * @param currentVersion reads the current version of the board, {@code null} when the board is gone
+     * @return the emitter of the connection, or {@code null} when the node has no room for another connection
+     */
+    public SseEmitter subscribe(String boardTag, String email, Supplier<Long> currentVersion) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(boardTag.toUpperCase(), email, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(ex -> subscriber.close());
+        subscribers.compute(subscriber.boardTag, (tag, boardSubscribers) -> {
+            Set<Subscriber> added = boardSubscribers != null ? boardSubscribers : ConcurrentHashMap.newKeySet();
+            added.add(subscriber);
+            return added;
+        });
+        Long version = currentVersion.get();
+        if (version == null) {
+            subscriber.disconnect();
+            return emitter;
+        }
+        subscriber.start(version);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBoardChanged(BoardChangedEvent event) {
+        Set<Subscriber> boardSubscribers = subscribers.get(event.getBoardTag().toUpperCase());
+        if (boardSubscribers == null || boardSubscribers.isEmpty()) return;
+
+        Message message;
+        try {
+            // serialised once for all connections
+            message = new Message(event.getVersion(), CHANGE_EVENT, objectMapper.writeValueAsString(event.getChange()));
+        } catch (JsonProcessingException ex) {
+            log.error("Failed to serialise change {} of board {}", event.getVersion(), event.getBoardTag(), ex);
+            return;
+        }
+        boardSubscribers.forEach(subscriber -> subscriber.offer(message));
+    }
+
+    /**
+     * Closes the connections of users who are no longer collaborators of the board.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCollaboratorsRemoved(CollaboratorsRemovedEvent event) {
+        Set<Subscriber> boardSubscribers = subscribers.get(event.getBoardTag().toUpperCase());
+        if (boardSubscribers == null) return;
+        boardSubscribers.stream()
+                .filter(subscriber -> event.getEmails().contains(subscriber.email))
+                .forEach(Subscriber::disconnect);
+    }
+
+    /**
+     * Sends a comment to every connection, so connections closed by the client or by a proxy are noticed and
+     * idle connections aren't closed by proxies.
+     */
+    @Scheduled(fixedDelayString = "${app.boards.events.heartbeat-ms:25000}")
+    public void heartbeat() {
+        Message heartbeat = new Message(0, null, null);
+        subscribers.values().forEach(boardSubscribers -> boardSubscribers.forEach(subscriber -> subscriber.offer(heartbeat)));
+    }
+
+    public Stats getStats() {
+        return new Stats(connections.get(), maxConnections, subscribers.size(), sent.sum(), evicted.sum(), rejected.sum());
+    }
+
+    private class Subscriber {
+        private final String boardTag;
+        private final String email;
+        private final SseEmitter emitter;
+        private final Deque<Message> queue = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long startVersion = -1;
+
+        private Subscriber(String boardTag, String email, SseEmitter emitter) {
+            this.boardTag = boardTag;
+            this.email = email;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Starts writing with the version event, ahead of the changes offered since the subscription.
+         */
+        private void start(long version) {
+            queued.incrementAndGet();
+            queue.addFirst(new Message(version, "version", String.valueOf(version)));
+            startVersion = version;
+            schedule();
+        }
+
+        private void offer(Message message) {
+            if (closed.get()) return;
+            if (queued.incrementAndGet() > bufferSize) {
+                evict();
+                return;
+            }
+            queue.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (startVersion < 0 || queue.isEmpty() || closed.get() || !writing.compareAndSet(false, true)) return;
+            try {
+                boardEventExecutor.execute(this::write);
+            } catch (TaskRejectedException ex) {
+                writing.set(false);
+                evict();
+            }
+        }
+
+        private void write() {
+            try {
+                Message message;
+                while (!closed.get() && (message = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    if (message.isCoveredBy(startVersion)) continue;
+                    emitter.send(message.toEvent());
+                    sent.increment();
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // the client went away, the container completes the emitter
+                close();
+            } finally {
+                writing.set(false);
+            }
+            // a message offered while the last one was written found the writer busy
+            schedule();
+        }
+
+        /**
+         * Disconnects a client that can't keep up. The emitter is completed by the executor, since a write to
+         * the client may be blocking it and the caller mustn't wait for that.
+         */
+        private void evict() {
+            if (disconnect()) evicted.increment();
+        }
+
+        private boolean disconnect() {
+            if (!close()) return false;
+            try {
+                boardEventExecutor.execute(emitter::complete);
+            } catch (TaskRejectedException ex) {
+                // the emitter times out on its own
+            }
+            return true;
+        }
+
+        private boolean close() {
+            if (!closed.compareAndSet(false, true)) return false;
+            queue.clear();
+            connections.decrementAndGet();
+            subscribers.computeIfPresent(boardTag, (tag, boardSubscribers) -> {
+                boardSubscribers.remove(this);
+                return boardSubscribers.isEmpty() ? null : boardSubscribers;
+            });
+            return true;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Message {
+        private final long version;
+        private final String name;
+        private final String data;
+
+        /**
+         * Whether the message is a change the version event the client started with already covers.
+         */
+        private boolean isCoveredBy(long startVersion) {
+            return CHANGE_EVENT.equals(name) && version <= startVersion;
+        }
+
+        private SseEmitter.SseEventBuilder toEvent() {
+            if (data == null) return SseEmitter.event().comment("heartbeat");
+            return SseEmitter.event().id(String.valueOf(version)).name(name).data(data, MediaType.TEXT_PLAIN);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Stats {
+        private final int connections;
+        private final int maxConnections;
+        private final int boards;
+        private final long sent;
+        private final long evicted;
+        private final long rejected;
+    }
+}
@@ -1,5 +1,6 @@
 package com.thullo.service;
 
+import com.thullo.data.model.Attachment;
 import com.thullo.security.UserPrincipal;
 import com.thullo.web.exception.BadRequestException;
 import com.thullo.web.exception.UserException;
@@ -23,6 +24,11 @@ public interface BoardService {
 
     List<BoardResponse> getBoards(UserPrincipal userPrincipal) throws UserException;
 
+    /**
+     * Returns the attachments of every task on the board.
+     */
+    List<Attachment> getAttachments(String boardTag) throws BadRequestException;
+
     void addCollaboratorToBoard(String boardTag, Set<String> collaborators) throws BadRequestException;
 
     void removeCollaboratorsFromBoard(String boardTag, Set<String> emails) throws BadRequestException;
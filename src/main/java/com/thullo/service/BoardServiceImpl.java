@@ -2,21 +2,29 @@ package com.thullo.service;
 
 
 import com.thullo.data.model.*;
+import com.thullo.data.repository.AttachmentRepository;
 import com.thullo.data.repository.BoardRepository;
+import com.thullo.data.repository.TaskRepository;
 import com.thullo.data.repository.UserRepository;
+import com.thullo.event.CollaboratorsRemovedEvent;
 import com.thullo.security.UserPrincipal;
 import com.thullo.util.Helper;
 import com.thullo.web.exception.BadRequestException;
 import com.thullo.web.exception.UserException;
 import com.thullo.web.payload.request.BoardRequest;
 import com.thullo.web.payload.response.BoardResponse;
+import com.thullo.web.payload.response.BoardTaskResponse;
+import com.thullo.web.payload.response.UserSummaryResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -27,6 +35,8 @@ import static java.lang.String.format;
 public class BoardServiceImpl implements BoardService {
 
     private final BoardRepository boardRepository;
+    private final TaskRepository taskRepository;
+    private final AttachmentRepository attachmentRepository;
     private final ModelMapper mapper;
 
     private final FileService fileService;
@@ -37,6 +47,12 @@ public class BoardServiceImpl implements BoardService {
 
     private final NotificationService notificationService;
 
+    private final BoardChangeService boardChangeService;
+
+    private final StorageUsageService storageUsageService;
+
+    private final ApplicationEventPublisher eventPublisher;
+
     private static final String BOARD_NOT_FOUND = "Board not found";
 
 
@@ -54,7 +70,8 @@ public class BoardServiceImpl implements BoardService {
         board.setUser(user);
         String imageUrl = null;
         if (boardRequest.getFile() != null) {
-            imageUrl = fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl());
+            storageUsageService.checkUserQuota(user.getEmail(), boardRequest.getFile().getSize());
+            imageUrl = fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl(), user.getEmail());
         }
         board.setImageUrl(imageUrl);
         board.setBoardTag(generateThreeLetterWord(boardRequest.getName().toUpperCase()));
@@ -73,52 +90,80 @@ public class BoardServiceImpl implements BoardService {
         return getBoardResponse(board);
     }
 
+    @Override
+    public List<Attachment> getAttachments(String boardTag) throws BadRequestException {
+        if (getBoardInternal(boardTag) == null) throw new BadRequestException(BOARD_NOT_FOUND);
+        return attachmentRepository.findByTask_Board_BoardTagOrderById(boardTag);
+    }
+
     private Board getBoardInternal(String boardTag) {
         return boardRepository.findByBoardTag(boardTag).orElse(null);
     }
 
 
     private BoardResponse getBoardResponse(Board board) {
-        BoardResponse boardResponse = mapper.map(board, BoardResponse.class);
-
-        List<Task> tasks = board.getTasks();
-        Map<Status, List<Task>> columns = tasks.stream()
-                .collect(Collectors.groupingBy(Task::getStatus));
+        return getBoardResponses(List.of(board)).get(0);
+    }
 
-        if (columns.isEmpty()) {
-            Arrays.stream(Status.values()).forEach(columnName -> {
-                BoardResponse.Column column = new BoardResponse.Column();
-                column.setName(columnName.getContent());
-                column.setTasks(Collections.emptyList());
-                boardResponse.getTaskColumn().add(column);
-            });
-        } else {
+    /**
+     * Builds the views of the boards with their columns of tasks in five queries, however many boards and
+     * tasks there are: the collaborators of the boards, their tasks, and the attachments, contributors and
+     * labels of all tasks at once. Every query selects the fields of the view directly, so no lazy
+     * association, and no eager association of a loaded entity, is touched while the view is serialised.
+     */
+    private List<BoardResponse> getBoardResponses(List<Board> boards) {
+        List<Long> boardIds = boards.stream().map(Board::getId).collect(Collectors.toList());
+        Map<Long, List<UserSummaryResponse>> collaborators = boardRepository.findCollaborators(boardIds).stream()
+                .collect(Collectors.groupingBy(UserSummaryResponse::getOwnerId));
+        List<BoardTaskResponse> tasks = taskRepository.findBoardTasks(boardIds);
+
+        Map<Long, BoardTaskResponse> tasksById = tasks.stream()
+                .collect(Collectors.toMap(BoardTaskResponse::getId, Function.identity()));
+        if (!tasks.isEmpty()) {
+            attachmentRepository.findBoardAttachments(boardIds)
+                    .forEach(attachment -> tasksById.get(attachment.getTaskId()).getAttachments().add(attachment));
+            taskRepository.findBoardTaskContributors(boardIds)
+                    .forEach(contributor -> tasksById.get(contributor.getOwnerId()).getContributors().add(contributor));
+            taskRepository.findBoardTaskLabels(boardIds)
+                    .forEach(label -> tasksById.get(label.getTaskId()).getLabels().add(label));
+        }
+        Map<Long, List<BoardTaskResponse>> boardTasks = tasks.stream()
+                .collect(Collectors.groupingBy(BoardTaskResponse::getBoardId));
+
+        List<BoardResponse> boardResponses = new ArrayList<>(boards.size());
+        for (Board board : boards) {
+            BoardResponse boardResponse = new BoardResponse();
+            boardResponse.setId(board.getId());
+            boardResponse.setName(board.getName());
+            boardResponse.setImageUrl(board.getImageUrl());
+            boardResponse.setBoardTag(board.getBoardTag());
+            boardResponse.setCreatedAt(board.getCreatedAt());
+            boardResponse.setUpdatedAt(board.getUpdatedAt());
+            boardResponse.getCollaborators().addAll(collaborators.getOrDefault(board.getId(), Collections.emptyList()));
+
+            Map<Status, List<BoardTaskResponse>> columns = boardTasks.getOrDefault(board.getId(), Collections.emptyList()).stream()
+                    .collect(Collectors.groupingBy(BoardTaskResponse::getStatus));
             Arrays.stream(Status.values()).forEach(columnName -> {
                 BoardResponse.Column column = new BoardResponse.Column();
                 column.setName(columnName.getContent());
-                List<Task> columnTasks = columns.getOrDefault(columnName, Collections.emptyList());
-                column.setTasks(columnTasks);
+                column.setTasks(columns.getOrDefault(columnName, Collections.emptyList()));
                 boardResponse.getTaskColumn().add(column);
             });
+            boardResponses.add(boardResponse);
         }
-
-        return boardResponse;
+        return boardResponses;
     }
 
     @Override
     public List<BoardResponse> getBoards(UserPrincipal userPrincipal) throws UserException {
         User user = findByEmail(userPrincipal.getEmail());
         List<Board> allUserBoards = boardRepository.getAllByUserOrderByCreatedAtAsc(user);
-        List<BoardResponse> boardResponses = new ArrayList<>(allUserBoards.size());
-
-        for (Board board : allUserBoards) {
-            boardResponses.add(getBoardResponse(board));
-        }
-
-        return boardResponses;
+        if (allUserBoards.isEmpty()) return new ArrayList<>();
+        return getBoardResponses(allUserBoards);
     }
 
     @Override
+    @Transactional
     public void addCollaboratorToBoard(String boardTag, Set<String> collaborators) throws BadRequestException {
         String title = "You have been added as a collaborator on board: " + boardTag;
         String message = "You have been added as a collaborator on board " + boardTag;
@@ -134,10 +179,12 @@ public class BoardServiceImpl implements BoardService {
                 notificationService.sendNotificationToUser(contributor, message, title, NotificationType.ADDED_AS_COLLABORATOR);
             }
         }
+        boardChangeService.boardChanged(board.getBoardTag(), BoardChangeType.COLLABORATORS_ADDED, null, null);
     }
 
 
     @Override
+    @Transactional
     public void removeCollaboratorsFromBoard(String boardTag, Set<String> emails) throws BadRequestException {
         String title = "You have been removed as a collaborator on board: " + boardTag;
         String message = "You have been removed as a collaborator on board " + boardTag;
@@ -146,13 +193,18 @@ public class BoardServiceImpl implements BoardService {
         if (board == null) throw new BadRequestException(BOARD_NOT_FOUND);
         Set<User> existingCollaborators = board.getCollaborators();
         List<User> usersToRemove = userRepository.findAllByEmails(emails);
+        Set<String> removed = new HashSet<>();
         for (User userToRemove : usersToRemove) {
             if (existingCollaborators.contains(userToRemove)) {
                 existingCollaborators.remove(userToRemove);
                 roleService.removeBoardRoleFromUser(userToRemove, board);
                 notificationService.sendNotificationToUser(userToRemove, message, title, NotificationType.REMOVED_AS_COLLABORATOR);
+                removed.add(userToRemove.getEmail());
             }
         }
+        boardChangeService.boardChanged(board.getBoardTag(), BoardChangeType.COLLABORATORS_REMOVED, null, null);
+        // their open event streams must not outlive the membership
+        if (!removed.isEmpty()) eventPublisher.publishEvent(new CollaboratorsRemovedEvent(board.getBoardTag(), removed));
     }
 
 
@@ -0,0 +1,111 @@
+package com.thullo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thullo.event.BoardChangedEvent;
+import com.thullo.web.exception.BadRequestException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the rendered view of the most read boards, up to {@code app.boards.read-model.max-entries}, as JSON and as
+ * a gzip copy of it, so reading a board that hasn't changed is a lookup and a copy of the bytes instead of the
+ * queries and the serialisation of the view.
+ * <p>
+ * Views are kept by board and {@link com.thullo.data.model.Board#getVersion() version}. The caller reads the
+ * version before the board is rendered, so a view is never kept under a newer version than its content, and a
+ * view of an older version than the one asked for is rendered again. Views are also dropped once a
+ * {@link BoardChangedEvent} of a newer version is published on this node, to free them early.
+ */
+@Component
+public class BoardViewStore {
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxEntries;
+
+    private final Map<String, RenderedBoard> views;
+
+    public BoardViewStore(ObjectMapper objectMapper,
+                          @Value("${app.boards.read-model.enabled:true}") boolean enabled,
+                          @Value("${app.boards.read-model.max-entries:500}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RenderedBoard> eldest) {
+                return size() > BoardViewStore.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the view of the board at the given version, rendering it when it isn't kept.
+     *
+     * @param boardTag the tag of the board
+     * @param version  the version of the board, read before the board is rendered
+     * @param renderer builds the body of the response for the board
+     */
+    public RenderedBoard getBoard(String boardTag, long version, Renderer renderer) throws BadRequestException {
+        if (!enabled) return render(version, renderer.render());
+
+        String key = boardTag.toUpperCase();
+        synchronized (this) {
+            RenderedBoard view = views.get(key);
+            if (view != null && view.version == version) return view;
+        }
+
+        RenderedBoard view = render(version, renderer.render());
+        synchronized (this) {
+            RenderedBoard kept = views.get(key);
+            if (kept == null || kept.version < version) views.put(key, view);
+        }
+        return view;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onBoardChanged(BoardChangedEvent event) {
+        String key = event.getBoardTag().toUpperCase();
+        RenderedBoard view = views.get(key);
+        if (view != null && view.version < event.getVersion()) views.remove(key);
+    }
+
+    public synchronized int size() {
+        return views.size();
+    }
+
+    private RenderedBoard render(long version, Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream os = new GZIPOutputStream(gzip)) {
+                os.write(json);
+            }
+            return new RenderedBoard(version, json, gzip.toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Renderer {
+        Object render() throws BadRequestException;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class RenderedBoard {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+    }
+}
@@ -1,5 +1,6 @@
 package com.thullo.service;
 
+import com.thullo.data.model.BoardChangeType;
 import com.thullo.data.model.Comment;
 import com.thullo.data.model.NotificationType;
 import com.thullo.data.model.Task;
@@ -14,6 +15,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,7 +35,10 @@ public class CommentServiceImpl implements CommentService {
 
     private final NotificationService notificationService;
 
+    private final BoardChangeService boardChangeService;
+
     @Override
+    @Transactional
     public CommentResponse createComment(String boardRef, String email, CommentRequest request) throws ResourceNotFoundException {
         Comment comment = mapper.map(request, Comment.class);
         User createdBy = userRepository.findUserByEmail(email);
@@ -43,6 +48,7 @@ public class CommentServiceImpl implements CommentService {
         comment.setTask(task);
         comment.setCreatedBy(createdBy);
         commentRepository.save(comment);
+        boardChanged(task, BoardChangeType.COMMENT_ADDED, comment);
 
         String title = "You have been mentioned in a comment on task: " + task.getBoardRef();
         String message = "You have been mentioned in a comment on task " + task.getBoardRef() + ": " + request.getMessage();
@@ -56,6 +62,7 @@ public class CommentServiceImpl implements CommentService {
     }
 
     @Override
+    @Transactional
     public CommentResponse editComment(String boardRef, Long commentId, CommentRequest request) throws ResourceNotFoundException {
         Comment comment = getComment(commentId);
         mapper.map(request, comment);
@@ -78,6 +85,8 @@ public class CommentServiceImpl implements CommentService {
             notificationService.sendNotificationsToUsers(newMentionedUsers, message, title, NotificationType.MENTIONED_IN_COMMENT);
         }
 
+        boardChanged(comment.getTask(), BoardChangeType.COMMENT_UPDATED, comment);
+
         CommentResponse response = mapper.map(comment, CommentResponse.class);
         response.setCreatedBy(comment.getCreatedBy().getName());
         response.setImageUrl(comment.getCreatedBy().getImageUrl());
@@ -86,6 +95,7 @@ public class CommentServiceImpl implements CommentService {
     }
 
     @Override
+    @Transactional
     public void deleteComment(String boardRef, Long commentId) throws ResourceNotFoundException {
         Task task = getTask(boardRef);
         Optional<Comment> commentToDelete = task.getComments()
@@ -96,6 +106,7 @@ public class CommentServiceImpl implements CommentService {
         commentToDelete.ifPresent(comment -> {
             task.getComments().remove(comment);
             commentRepository.delete(comment);
+            boardChanged(task, BoardChangeType.COMMENT_DELETED, comment);
         });
     }
 
@@ -114,6 +125,10 @@ public class CommentServiceImpl implements CommentService {
     }
 
 
+    private void boardChanged(Task task, BoardChangeType type, Comment comment) {
+        boardChangeService.boardChanged(task.getBoard().getBoardTag(), type, task.getBoardRef(), String.valueOf(comment.getId()));
+    }
+
     private Comment getComment(Long commentId) throws ResourceNotFoundException {
         return commentRepository.findById(commentId)
                 .orElseThrow(() -> new ResourceNotFoundException("Comment not found"));
@@ -1,17 +1,149 @@
 package com.thullo.service;
 
+import com.thullo.data.model.Attachment;
 import com.thullo.data.model.FileData;
+import com.thullo.data.model.FileMetadata;
 import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.request.FileOfferRequest;
+import com.thullo.web.payload.response.FileOfferChallengeResponse;
 import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
 
 public interface FileService {
-    String uploadFile(MultipartFile file, String url) throws BadRequestException, IOException;
+    /**
+     * Stores an uploaded file, counted against the storage quota of the user who uploaded it.
+     *
+     * @param email the email of the user uploading the file
+     * @return the url of the new file
+     */
+    String uploadFile(MultipartFile file, String url, String email) throws BadRequestException, IOException;
 
+    /**
+     * Stores a file from a stream, for uploads that don't arrive as a single multipart file.
+     *
+     * @param fileName the original name of the file
+     * @param fileSize the size of the content in bytes
+     * @param content  the content, read to the end and closed
+     * @param url      the url of the request, used to build the url of the file
+     * @param email    the email of the user uploading the file
+     * @return the url of the new file
+     */
+    String uploadFile(String fileName, long fileSize, InputStream content, String url, String email) throws BadRequestException, IOException;
+
+    /**
+     * Stores content produced by the server itself, such as thumbnails. Unlike the upload methods no
+     * {@link com.thullo.event.FileUploadedEvent} is published.
+     *
+     * @return the metadata of the new file
+     */
+    FileData storeFile(String fileName, long fileSize, InputStream content) throws IOException;
+
+    /**
+     * Issues the challenge the user answers to prove they hold the offered content. It is issued whether or not
+     * the content is stored.
+     */
+    FileOfferChallengeResponse createOfferChallenge(FileOfferRequest request, String email);
+
+    /**
+     * Creates a file from content the server already holds, identified by the hash and size offered by the
+     * client, so the bytes don't have to be uploaded again. The offer must carry the answer to a challenge
+     * issued to the user, proving they hold the content.
+     *
+     * @param request the offered content hash, size and file name, with the challenge and its proof
+     * @param url     the url of the request, used to build the url of the file
+     * @param email   the email of the user offering the file
+     * @return the url of the new file, or {@code null} when the content is not stored, or the proof doesn't
+     * match it, and it has to be uploaded
+     * @throws BadRequestException when the offer has no valid challenge
+     */
+    String uploadFileIfPresent(FileOfferRequest request, String url, String email) throws BadRequestException, IOException;
+
+    /**
+     * Looks up the metadata of a stored file. The content is not read; use
+     * {@link #writeFile(String, OutputStream)} to stream it.
+     *
+     * @param fileId the public id of the file
+     * @return the file metadata, or {@code null} when no file exists with the given id
+     */
     FileData getFile(String fileId) throws IOException;
 
+    /**
+     * Looks up the name, type and size of a stored file.
+     *
+     * @return the file metadata, or {@code null} when no file exists with the given id
+     */
+    FileMetadata getFileMetadata(String fileId);
+
+    /**
+     * Reports whether an uploaded file can be read yet. Uploads stored in the background are processing until
+     * their content is stored, and failed when storing it didn't succeed.
+     *
+     * @return the status of the file, or {@code null} when no file exists or is pending with the given id
+     */
+    UploadIngestor.Status getUploadStatus(String fileId);
+
+    /**
+     * Streams the decoded content of a stored file to the given output stream
+     * using a fixed size buffer.
+     *
+     * @param fileId       the public id of the file
+     * @param outputStream the stream the content is written to, it is not closed
+     */
+    void writeFile(String fileId, OutputStream outputStream) throws IOException;
+
+    /**
+     * Streams a range of the decoded content of a stored file to the given output stream.
+     *
+     * @param fileId       the public id of the file
+     * @param offset       the position of the first byte to write
+     * @param length       the number of bytes to write
+     * @param outputStream the stream the content is written to, it is not closed
+     */
+    void writeFile(String fileId, long offset, long length, OutputStream outputStream) throws IOException;
+
+    /**
+     * Streams the files of the given attachments to the output stream as a ZIP archive. Entries are written
+     * one at a time with the same fixed size buffer as {@link #writeFile(String, OutputStream)}, so memory
+     * use doesn't depend on the size of the archive. Attachments whose file no longer exists are skipped.
+     *
+     * @param attachments  the attachments to archive, in entry order
+     * @param groupByTask  whether entries are put in a folder named after the board ref of their task
+     * @param outputStream the stream the archive is written to, it is not closed
+     */
+    void writeAttachmentArchive(List<Attachment> attachments, boolean groupByTask, OutputStream outputStream) throws IOException;
+
+    /**
+     * Streams the stored content of a file to the given output stream as-is, without decoding it, for
+     * clients that accept the {@link com.thullo.data.model.ContentCodec} the file is stored with.
+     *
+     * @param fileId       the public id of the file
+     * @param outputStream the stream the content is written to, it is not closed
+     */
+    void writeEncodedFile(String fileId, OutputStream outputStream) throws IOException;
+
+    /**
+     * Returns a local file holding the content of a stored file, as stored when {@code encoded} and decoded
+     * otherwise, so it can be sent with zero-copy I/O. Content of stores that don't keep it on the local disk
+     * is materialised into the serving cache on first use, and the returned file must be passed to
+     * {@link com.thullo.storage.ServingFileCache#release} once sent.
+     *
+     * @param fileId  the public id of the file
+     * @param encoded whether the stored content is wanted as-is
+     * @return the local file, or {@code null} when the file is served from memory or the serving cache is disabled
+     */
+    Path getServingFile(String fileId, boolean encoded) throws IOException;
+
     MediaType getMediaTypeForFileType(String fileType);
-    void deleteFile(String fileId);
+    /**
+     * Deletes a file, and its content once no other file shares it.
+     *
+     * @return the number of stored bytes freed
+     */
+    long deleteFile(String fileId);
 }
@@ -1,82 +1,405 @@
 package com.thullo.service;
 
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.ContentCodec;
 import com.thullo.data.model.FileData;
+import com.thullo.data.model.FileMetadata;
 import com.thullo.data.repository.FilesRepository;
+import com.thullo.event.FileDeletedEvent;
+import com.thullo.event.FileUploadedEvent;
+import com.thullo.storage.CompressionPolicy;
+import com.thullo.storage.ContentReader;
+import com.thullo.storage.FileBlobRegistry;
+import com.thullo.storage.FileContentCache;
+import com.thullo.storage.FileStore;
+import com.thullo.storage.FileStoreResolver;
+import com.thullo.storage.ServingFileCache;
 import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.request.FileOfferRequest;
+import com.thullo.web.payload.response.FileOfferChallengeResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.thullo.util.Helper.extractFileIdFromUrl;
+import static com.thullo.util.Helper.toHex;
+import static java.lang.String.format;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileServiceImpl implements FileService {
+    private static final int BUFFER_SIZE = 8192;
+
     private final FilesRepository filesRepository;
+    private final FileStoreResolver fileStoreResolver;
+    private final FileBlobRegistry fileBlobRegistry;
+    private final CompressionPolicy compressionPolicy;
+    private final FileContentCache fileContentCache;
+    private final ServingFileCache servingFileCache;
+    private final UploadIngestor uploadIngestor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PossessionChallenger possessionChallenger;
 
     @Override
-    public String uploadFile(MultipartFile file, String url) throws BadRequestException, IOException {
+    public String uploadFile(MultipartFile file, String url, String email) throws BadRequestException, IOException {
         if (file.isEmpty()) throw new BadRequestException("File cannot be empty");
         String baseUrl = url.substring(0, url.lastIndexOf("thullo"));
-        FileData fileData = uploadFileData(file);
+        if (uploadIngestor.isEnabled()) return submitUpload(file, baseUrl, email);
+        FileData fileData;
+        try (InputStream content = file.getInputStream()) {
+            fileData = uploadFileData(UUID.randomUUID().toString(), file.getOriginalFilename(), file.getSize(), content, email);
+        }
+        publishUploaded(fileData);
         return String.format("%s%s%s", baseUrl, "thullo/files/", fileData.getFileId()) + "." + fileData.getFileType();
     }
 
-    private FileData uploadFileData(MultipartFile file) throws IOException {
+    /**
+     * Spools the upload for the {@link UploadIngestor} and returns the url of the file id reserved for it right
+     * away, before the content is stored.
+     */
+    private String submitUpload(MultipartFile file, String baseUrl, String email) throws IOException {
         String originalFileName = file.getOriginalFilename();
         assert originalFileName != null;
         String fileType = originalFileName.substring(originalFileName.lastIndexOf(".") + 1);
-        byte[] compressedFile = compressFile(file.getBytes());
         String fileId = UUID.randomUUID().toString();
-        InputStream is = new ByteArrayInputStream(compressedFile);
-        FileData fileData = new FileData(fileId, originalFileName, fileType, is.readAllBytes());
-        return filesRepository.save(fileData);
+        uploadIngestor.submit(new UploadIngestor.SpooledUpload(fileId, originalFileName, file.getSize(), email),
+                file.getInputStream(), this::ingestSpooled);
+        return String.format("%s%s%s", baseUrl, "thullo/files/", fileId) + "." + fileType;
+    }
+
+    /**
+     * Stores the uploads a previous run spooled but didn't store before it stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverSpooledUploads() throws IOException {
+        uploadIngestor.recover(this::ingestSpooled);
+    }
+
+    private void ingestSpooled(UploadIngestor.SpooledUpload upload, Path spoolFile) throws IOException {
+        // a run may have stopped between storing the upload and deleting its spool
+        if (filesRepository.findMetadataByFileId(upload.getFileId()).isPresent()) return;
+        FileData fileData;
+        try (InputStream content = Files.newInputStream(spoolFile)) {
+            fileData = uploadFileData(upload.getFileId(), upload.getFileName(), upload.getFileSize(), content,
+                    upload.getUploadedBy());
+        }
+        publishUploaded(fileData);
+    }
+
+    @Override
+    public String uploadFile(String fileName, long fileSize, InputStream content, String url, String email) throws BadRequestException, IOException {
+        if (fileSize == 0) throw new BadRequestException("File cannot be empty");
+        String baseUrl = url.substring(0, url.lastIndexOf("thullo"));
+        FileData fileData = uploadFileData(UUID.randomUUID().toString(), fileName, fileSize, content, email);
+        publishUploaded(fileData);
+        return String.format("%s%s%s", baseUrl, "thullo/files/", fileData.getFileId()) + "." + fileData.getFileType();
+    }
+
+    @Override
+    public FileData storeFile(String fileName, long fileSize, InputStream content) throws IOException {
+        return uploadFileData(UUID.randomUUID().toString(), fileName, fileSize, content, null);
+    }
+
+    @Override
+    public FileOfferChallengeResponse createOfferChallenge(FileOfferRequest request, String email) {
+        return possessionChallenger.issue(request, email);
+    }
+
+    @Override
+    public String uploadFileIfPresent(FileOfferRequest request, String url, String email) throws BadRequestException, IOException {
+        String originalFileName = request.getFileName();
+        if (!originalFileName.contains(".")) throw new BadRequestException("File name must have an extension");
+        String baseUrl = url.substring(0, url.lastIndexOf("thullo"));
+        String fileType = originalFileName.substring(originalFileName.lastIndexOf(".") + 1);
+
+        PossessionChallenger.Range range = possessionChallenger.verify(request, email);
+        FileData stored = filesRepository.findFirstByContentHashAndFileSize(request.getContentHash().toLowerCase(), request.getFileSize())
+                .orElse(null);
+        // a wrong proof is answered like absent content, so the answer tells nothing to a client without the bytes
+        if (stored == null || !isProofOf(stored, range, request.getProof())) return null;
+
+        FileData fileData = new FileData(UUID.randomUUID().toString(), originalFileName, fileType);
+        fileData.setContentHash(request.getContentHash().toLowerCase());
+        fileData.setFileSize(request.getFileSize());
+        fileData.setUploadedBy(email);
+        fileData = fileBlobRegistry.acquireExisting(fileData);
+        if (fileData == null) return null;
+        publishUploaded(fileData);
+        return String.format("%s%s%s", baseUrl, "thullo/files/", fileData.getFileId()) + "." + fileData.getFileType();
+    }
+
+    /**
+     * Whether the proof is the hash of the nonce followed by the challenged range of the stored content.
+     */
+    private boolean isProofOf(FileData stored, PossessionChallenger.Range range, String proof) throws IOException {
+        MessageDigest digest = newContentDigest();
+        digest.update(range.getNonce().getBytes(StandardCharsets.UTF_8));
+        try (DigestOutputStream os = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            writeFile(stored.getFileId(), range.getOffset(), range.getLength(), os);
+        }
+        return MessageDigest.isEqual(toHex(digest.digest()).getBytes(StandardCharsets.US_ASCII),
+                proof.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void publishUploaded(FileData fileData) {
+        eventPublisher.publishEvent(new FileUploadedEvent(fileData.getFileId(), fileData.getFileType(),
+                fileData.getUploadedBy(), fileData.getFileSize(), fileData.getCompressedSize()));
+    }
+
+    private FileData uploadFileData(String fileId, String originalFileName, long fileSize, InputStream content,
+                                    String uploadedBy) throws IOException {
+        assert originalFileName != null;
+        String fileType = originalFileName.substring(originalFileName.lastIndexOf(".") + 1);
+
+        Path spoolFile = Files.createTempFile("thullo-upload-", ".tmp");
+        try {
+            FileData fileData = new FileData(fileId, originalFileName, fileType);
+            encodeFile(content, fileSize, fileData, spoolFile);
+            fileData.setFileSize(fileSize);
+            fileData.setUploadedBy(uploadedBy);
+            return fileBlobRegistry.acquire(fileData, spoolFile);
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    @Override
+    public FileData getFile(String fileId) {
+        FileContentCache.Entry cached = fileContentCache.peek(fileId);
+        if (cached != null) return cached.getFileData();
+        return filesRepository.findFileDataByFileId(fileId).orElse(null);
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(String fileId) {
+        return filesRepository.findMetadataByFileId(fileId).orElse(null);
+    }
+
+    @Override
+    public UploadIngestor.Status getUploadStatus(String fileId) {
+        UploadIngestor.Status status = uploadIngestor.getStatus(fileId);
+        if (status != null) return status;
+        return filesRepository.findMetadataByFileId(fileId).isPresent() ? UploadIngestor.Status.READY : null;
     }
 
+    @Override
+    public void writeFile(String fileId, OutputStream outputStream) throws IOException {
+        writeFile(fileId, 0, Long.MAX_VALUE, outputStream);
+    }
+
+    @Override
+    public void writeFile(String fileId, long offset, long length, OutputStream outputStream) throws IOException {
+        FileContentCache.Entry cached = fileContentCache.get(fileId);
+        FileData dbFile = cached != null ? cached.getFileData() : findFileData(fileId);
+        ContentCodec codec = dbFile.resolveCodec();
+        if (codec == ContentCodec.IDENTITY) {
+            readContent(dbFile, cached, offset, content -> copy(content, outputStream, length));
+            return;
+        }
+        readContent(dbFile, cached, 0, content -> {
+            try (InputStream decodedFile = codec.decode(content, BUFFER_SIZE)) {
+                // compressed content can't be seeked, skipping still inflates the skipped bytes
+                skip(decodedFile, offset);
+                copy(decodedFile, outputStream, length);
+            }
+        });
+    }
+
+    @Override
+    public void writeAttachmentArchive(List<Attachment> attachments, boolean groupByTask, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        Set<String> entryNames = new HashSet<>();
+        for (Attachment attachment : attachments) {
+            String fileId = extractFileIdFromUrl(attachment.getFileUrl());
+            FileData dbFile = getFile(fileId);
+            if (dbFile == null) {
+                log.warn("Skipping attachment {} from archive, file {} not found", attachment.getId(), fileId);
+                continue;
+            }
+            String fileName = entryFileName(attachment.getFileName() != null ? attachment.getFileName() : dbFile.getFileName());
+            if (groupByTask) fileName = attachment.getTask().getBoardRef() + "/" + fileName;
+
+            // content the compression policy stored as-is won't shrink in the archive either
+            zip.setLevel(dbFile.resolveCodec() == ContentCodec.IDENTITY ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(uniqueEntryName(fileName, entryNames)));
+            writeFile(fileId, zip);
+            zip.closeEntry();
+        }
+        // finish rather than close, the response stream is closed by the container
+        zip.finish();
+    }
+
+    /**
+     * Keeps only the last path component of a user supplied file name, so an entry can't be extracted outside the
+     * directory the archive is extracted to.
+     */
+    private static String entryFileName(String fileName) {
+        String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        return name.isEmpty() || name.equals(".") || name.equals("..") ? "attachment" : name;
+    }
+
+    private static String uniqueEntryName(String fileName, Set<String> entryNames) {
+        if (entryNames.add(fileName)) return fileName;
+        int dot = fileName.lastIndexOf('.');
+        int slash = fileName.lastIndexOf('/');
+        String base = dot > slash + 1 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > slash + 1 ? fileName.substring(dot) : "";
+        for (int copy = 2; ; copy++) {
+            String name = format("%s (%d)%s", base, copy, extension);
+            if (entryNames.add(name)) return name;
+        }
+    }
 
-    private byte[] decompressFile(byte[] compressedFile) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(compressedFile);
-        GZIPInputStream gzipIn = new GZIPInputStream(bais);
-        return getBytes(gzipIn);
+    @Override
+    public void writeEncodedFile(String fileId, OutputStream outputStream) throws IOException {
+        FileContentCache.Entry cached = fileContentCache.get(fileId);
+        FileData dbFile = cached != null ? cached.getFileData() : findFileData(fileId);
+        readContent(dbFile, cached, 0, content -> copy(content, outputStream));
     }
 
     @Override
-    public FileData getFile(String fileId) throws IOException {
-        FileData dbFile = filesRepository.findFileDataByFileId(fileId).orElse(null);
-        if (dbFile != null) {
-            byte[] compressedFile = dbFile.getFileByte();
-            byte[] decompressedFile = decompressFile(compressedFile);
-            dbFile.setFileByte(decompressedFile);
+    public Path getServingFile(String fileId, boolean encoded) throws IOException {
+        if (!servingFileCache.isEnabled() || fileContentCache.peek(fileId) != null) return null;
+        FileData dbFile = findFileData(fileId);
+        // small files the hot-file cache takes are loaded into memory by writeFile instead
+        if (dbFile.getCompressedSize() != null && fileContentCache.shouldAdmit(fileId, dbFile.getCompressedSize())) return null;
+        fileContentCache.recordMiss(fileId);
+
+        FileStore fileStore = fileStoreResolver.getStore(dbFile);
+        String storageKey = dbFile.resolveStorageKey();
+        ContentCodec codec = dbFile.resolveCodec();
+        if (encoded || codec == ContentCodec.IDENTITY) {
+            Path localPath = fileStore.getLocalPath(storageKey);
+            if (localPath != null) return localPath;
+            return servingFileCache.get(storageKey, codec.getContentEncoding(),
+                    os -> fileStore.read(storageKey, content -> copy(content, os)));
+        }
+        return servingFileCache.get(storageKey, ContentCodec.IDENTITY.getContentEncoding(),
+                os -> fileStore.read(storageKey, content -> {
+                    try (InputStream decodedFile = codec.decode(content, BUFFER_SIZE)) {
+                        copy(decodedFile, os);
+                    }
+                }));
+    }
+
+    /**
+     * Reads the stored content from the cache, or from the store while loading it into the cache when the
+     * cache admits it. Files uploaded before their stored size was recorded are never cached.
+     */
+    private void readContent(FileData dbFile, FileContentCache.Entry cached, long offset, ContentReader reader) throws IOException {
+        if (cached != null) {
+            reader.read(cached.openStream(offset));
+            return;
+        }
+        FileStore fileStore = fileStoreResolver.getStore(dbFile);
+        Long storedSize = dbFile.getCompressedSize();
+        if (storedSize == null || !fileContentCache.shouldAdmit(dbFile.getFileId(), storedSize)) {
+            fileStore.read(dbFile.resolveStorageKey(), offset, reader);
+            return;
         }
-        return dbFile;
+        byte[] content = new byte[Math.toIntExact(storedSize)];
+        fileStore.read(dbFile.resolveStorageKey(), is -> {
+            if (is.readNBytes(content, 0, content.length) != content.length) {
+                throw new EOFException(format("Content of file %s is shorter than its stored size", dbFile.getFileId()));
+            }
+        });
+        FileContentCache.Entry entry = fileContentCache.put(dbFile, content);
+        reader.read(entry != null
+                ? entry.openStream(offset)
+                : new ByteArrayInputStream(content, (int) Math.min(offset, content.length), content.length));
     }
 
-    private byte[] getBytes(InputStream is) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
+    private FileData findFileData(String fileId) throws FileNotFoundException {
+        return filesRepository.findFileDataByFileId(fileId)
+                .orElseThrow(() -> new FileNotFoundException(format("File with id %s not found", fileId)));
+    }
+
+    /**
+     * Encodes the uploaded content into the spool file with the codec chosen by the {@link CompressionPolicy}
+     * from the first bytes of the upload, and records the codec and the SHA-256 hash of the original content
+     * on the file data. Only the sample and a single buffer are held in memory regardless of the upload size.
+     * The target is deleted when the content can't be encoded completely.
+     */
+    private void encodeFile(InputStream content, long fileSize, FileData fileData, Path target) throws IOException {
+        MessageDigest digest = newContentDigest();
+        try (InputStream is = new DigestInputStream(content, digest)) {
+            byte[] sample = new byte[compressionPolicy.getSampleSize()];
+            int sampleLength = is.readNBytes(sample, 0, sample.length);
+            CompressionPolicy.Decision decision = compressionPolicy.decide(fileData.getFileType(), fileSize, sample, sampleLength);
+
+            // the file stream is closed on its own too, in case the codec fails to wrap it
+            try (OutputStream os = Files.newOutputStream(target);
+                 OutputStream encodedOut = decision.getCodec().encode(os, decision.getLevel(), BUFFER_SIZE)) {
+                encodedOut.write(sample, 0, sampleLength);
+                copy(is, encodedOut);
+            }
+            fileData.setCodec(decision.getCodec());
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(target);
+            throw ex;
+        }
+        fileData.setContentHash(toHex(digest.digest()));
+    }
+
+    private MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void copy(InputStream is, OutputStream os) throws IOException {
+        copy(is, os, Long.MAX_VALUE);
+    }
+
+    private void copy(InputStream is, OutputStream os, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
         int len;
-        while ((len = is.read(buffer)) > 0) {
-            baos.write(buffer, 0, len);
+        while (remaining > 0 && (len = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            os.write(buffer, 0, len);
+            remaining -= len;
         }
-        is.close();
-        return baos.toByteArray();
     }
 
-    private byte[] compressFile(byte[] fileData) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPOutputStream gzipOut = new GZIPOutputStream(baos);
-        gzipOut.write(fileData);
-        gzipOut.close();
-        return baos.toByteArray();
+    private void skip(InputStream is, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = is.skip(remaining);
+            if (skipped <= 0) {
+                if (is.read() == -1) throw new EOFException("Range starts beyond the end of the file");
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
     }
 
     public MediaType getMediaTypeForFileType(String fileType) {
@@ -102,10 +425,21 @@ public class FileServiceImpl implements FileService {
     }
 
     @Override
-    public void deleteFile(String fileId) {
-        filesRepository.findFileDataByFileId(fileId)
-                .ifPresent(filesRepository::delete);
-    }
+    public long deleteFile(String fileId) {
+        FileData fileData = filesRepository.findFileDataByFileId(fileId).orElse(null);
+        if (fileData == null) return 0;
 
+        long reclaimedBytes = 0;
+        try {
+            reclaimedBytes = fileBlobRegistry.release(fileData);
+        } catch (IOException ex) {
+            log.warn("Failed to delete content of file {}", fileId, ex);
+        }
+        fileContentCache.invalidate(fileId);
+        servingFileCache.invalidate(fileData.resolveStorageKey());
+        eventPublisher.publishEvent(new FileDeletedEvent(fileId, fileData.getUploadedBy(),
+                fileData.getFileSize() != null ? fileData.getFileSize() : 0, fileData.getCompressedSize()));
+        return reclaimedBytes;
+    }
 
 }
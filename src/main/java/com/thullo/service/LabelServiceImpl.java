@@ -1,6 +1,7 @@
 package com.thullo.service;
 
 import com.thullo.data.model.Board;
+import com.thullo.data.model.BoardChangeType;
 import com.thullo.data.model.Label;
 import com.thullo.data.model.Task;
 import com.thullo.data.repository.BoardRepository;
@@ -12,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -30,7 +32,10 @@ public class LabelServiceImpl implements LabelService {
 
     private final ModelMapper mapper;
 
+    private final BoardChangeService boardChangeService;
+
     @Override
+    @Transactional
     public Label createLabel(String boardRef, LabelRequest request) throws ResourceNotFoundException {
         Task task = getTask(boardRef);
         Label label = labelRepository.findByName(request.getName())
@@ -39,6 +44,7 @@ public class LabelServiceImpl implements LabelService {
         if (!task.getLabels().contains(label)) {
             task.getLabels().add(label);
             taskRepository.save(task);
+            boardChanged(task, BoardChangeType.LABEL_ADDED, label);
         }
         return label;
     }
@@ -55,12 +61,14 @@ public class LabelServiceImpl implements LabelService {
     }
 
     @Override
+    @Transactional
     public void removeLabelFromTask(Long labelId, String boardRef) throws ResourceNotFoundException {
         Label label = getLabel(labelId);
         Task task = getTask(boardRef);
 
         task.getLabels().remove(label);
         taskRepository.save(task);
+        boardChanged(task, BoardChangeType.LABEL_REMOVED, label);
     }
 
     @Override
@@ -79,6 +87,7 @@ public class LabelServiceImpl implements LabelService {
     }
 
 
+    @Transactional
     public Label updateLabelOnTask(String boardRef, Long labelId, LabelRequest request) throws ResourceNotFoundException {
         Task task = getTask(boardRef);
         Label label = getLabel(labelId);
@@ -98,6 +107,7 @@ public class LabelServiceImpl implements LabelService {
             task.getLabels().remove(label);
             task.getLabels().add(existingLabel);
             taskRepository.save(task);
+            boardChanged(task, BoardChangeType.LABEL_UPDATED, existingLabel);
             return existingLabel;
         } else if (!isNullOrEmpty(request.getColorCode()) || !isNullOrEmpty(request.getBackgroundCode())) {
             // Request has a new color code or background code, but the name is the same as the existing label name.
@@ -110,6 +120,7 @@ public class LabelServiceImpl implements LabelService {
             task.getLabels().remove(label);
             task.getLabels().add(newLabel);
             taskRepository.save(task);
+            boardChanged(task, BoardChangeType.LABEL_UPDATED, newLabel);
             return newLabel;
         } else {
             // Request has no changes to the name, color code, or background code.
@@ -118,6 +129,10 @@ public class LabelServiceImpl implements LabelService {
     }
 
 
+    private void boardChanged(Task task, BoardChangeType type, Label label) {
+        boardChangeService.boardChanged(task.getBoard().getBoardTag(), type, task.getBoardRef(), String.valueOf(label.getId()));
+    }
+
     private Label getLabel(Long labelId) throws ResourceNotFoundException {
         return labelRepository.findById(labelId).orElseThrow(
                 () -> new ResourceNotFoundException("Label not found"));
@@ -0,0 +1,205 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.BackfillProgress;
+import com.thullo.data.model.Board;
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.Task;
+import com.thullo.data.model.User;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.BackfillProgressRepository;
+import com.thullo.data.repository.BoardRepository;
+import com.thullo.data.repository.FilesRepository;
+import com.thullo.data.repository.TaskRepository;
+import com.thullo.data.repository.UserRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static com.thullo.util.Helper.fileIdOf;
+
+/**
+ * Deletes files whose url is no longer used by any board, task or user image or by any attachment, such as
+ * covers replaced by editing a task, attachments of deleted tasks and uploads that were never used.
+ * <p>
+ * Every run checks the next {@code app.files.gc.batch-size} files, walking all files in id order over
+ * successive runs. Files younger than {@code app.files.gc.grace-period-hours} are skipped so a file uploaded
+ * just before the entity referencing it is saved is never collected. In dry-run mode orphans are only logged
+ * and counted.
+ * <p>
+ * References are looked up by the indexed file id columns of the referencing entities. Rows saved before those
+ * columns existed get their file id filled in first, a batch per run, and no file is collected until they all
+ * have, so a file they use is never taken for an orphan. The progress of the backfill is saved, so it is
+ * resumed after a restart and not repeated once finished.
+ */
+@Slf4j
+@Component
+public class OrphanFileCollector {
+    private final FilesRepository filesRepository;
+    private final FileService fileService;
+    private final BackfillProgressRepository backfillProgressRepository;
+    private final List<ReferenceBackfill<?>> backfills;
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final int batchSize;
+    private final long gracePeriodHours;
+
+    private Long lastScannedId = 0L;
+    private Report currentPass;
+    private Report lastPass;
+
+    public OrphanFileCollector(FilesRepository filesRepository, FileService fileService, BoardRepository boardRepository,
+                               TaskRepository taskRepository, UserRepository userRepository,
+                               AttachmentRepository attachmentRepository,
+                               BackfillProgressRepository backfillProgressRepository,
+                               @Value("${app.files.gc.enabled:false}") boolean enabled,
+                               @Value("${app.files.gc.dry-run:true}") boolean dryRun,
+                               @Value("${app.files.gc.batch-size:100}") int batchSize,
+                               @Value("${app.files.gc.grace-period-hours:24}") long gracePeriodHours) {
+        this.filesRepository = filesRepository;
+        this.fileService = fileService;
+        this.backfillProgressRepository = backfillProgressRepository;
+        this.backfills = List.of(
+                new ReferenceBackfill<>("board.imageFileId", boardRepository::findWithoutImageFileId, Board::getId, Board::getImageUrl, boardRepository::updateImageFileId),
+                new ReferenceBackfill<>("task.imageFileId", taskRepository::findWithoutImageFileId, Task::getId, Task::getImageUrl, taskRepository::updateImageFileId),
+                new ReferenceBackfill<>("user.imageFileId", userRepository::findWithoutImageFileId, User::getId, User::getImageUrl, userRepository::updateImageFileId),
+                new ReferenceBackfill<>("attachment.fileId", attachmentRepository::findWithoutFileId, Attachment::getId, Attachment::getFileUrl, attachmentRepository::updateFileId));
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        this.batchSize = batchSize;
+        this.gracePeriodHours = gracePeriodHours;
+        this.currentPass = new Report(dryRun);
+    }
+
+    @Scheduled(fixedDelayString = "${app.files.gc.delay-ms:300000}")
+    public synchronized void collectBatch() {
+        if (!enabled || !backfillReferences()) return;
+
+        LocalDateTime createdBefore = LocalDateTime.now().minusHours(gracePeriodHours);
+        List<Long> ids = filesRepository.findIdsCreatedBefore(lastScannedId, createdBefore, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            if (currentPass.getScanned() > 0) {
+                currentPass.finishedAt = LocalDateTime.now();
+                lastPass = currentPass;
+                log.info("{}orphaned file collection scanned {} files, found {} orphans holding {} bytes, reclaimed {} bytes",
+                        dryRun ? "Dry run: " : "", lastPass.getScanned(), lastPass.getOrphaned(),
+                        lastPass.getOrphanedBytes(), lastPass.getReclaimedBytes());
+            }
+            currentPass = new Report(dryRun);
+            lastScannedId = 0L;
+            return;
+        }
+
+        for (FileData orphan : filesRepository.findUnreferenced(ids)) {
+            long storedBytes = orphan.getCompressedSize() != null ? orphan.getCompressedSize() : 0;
+            long reclaimedBytes = 0;
+            if (dryRun) {
+                log.info("Dry run: file {} ({}) is orphaned", orphan.getFileId(), orphan.getFileName());
+            } else {
+                try {
+                    reclaimedBytes = fileService.deleteFile(orphan.getFileId());
+                } catch (RuntimeException ex) {
+                    log.warn("Failed to delete orphaned file {}", orphan.getFileId(), ex);
+                    continue;
+                }
+            }
+            currentPass.orphaned++;
+            currentPass.orphanedBytes += storedBytes;
+            currentPass.reclaimedBytes += reclaimedBytes;
+        }
+        currentPass.scanned += ids.size();
+        lastScannedId = ids.get(ids.size() - 1);
+    }
+
+    /**
+     * Fills in the file ids of the next batch of rows saved without one.
+     *
+     * @return whether every row has its file id, so files can be collected
+     */
+    private boolean backfillReferences() {
+        for (ReferenceBackfill<?> backfill : backfills) {
+            if (backfill.progress == null) {
+                backfill.progress = backfillProgressRepository.findById(backfill.name)
+                        .orElseGet(() -> new BackfillProgress(backfill.name));
+            }
+            if (!backfill.progress.isDone()) {
+                backfill.fillBatch(PageRequest.of(0, batchSize));
+                backfillProgressRepository.save(backfill.progress);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized Report getCurrentPass() {
+        return currentPass.copy();
+    }
+
+    /**
+     * Returns the report of the last pass over all files, {@code null} until a pass completed.
+     */
+    public synchronized Report getLastPass() {
+        return lastPass;
+    }
+
+    @RequiredArgsConstructor
+    private static class ReferenceBackfill<T> {
+        private final String name;
+        private final BiFunction<Long, Pageable, List<T>> finder;
+        private final Function<T, Long> id;
+        private final Function<T, String> url;
+        private final BiConsumer<Long, String> updater;
+        private BackfillProgress progress;
+
+        private void fillBatch(Pageable page) {
+            List<T> rows = finder.apply(progress.getLastId(), page);
+            if (rows.isEmpty()) {
+                progress.setDone(true);
+                return;
+            }
+            for (T row : rows) {
+                // urls not served by this application, like images of OAuth2 providers, have no file id
+                String fileId = fileIdOf(url.apply(row));
+                if (fileId != null) updater.accept(id.apply(row), fileId);
+            }
+            progress.setLastId(id.apply(rows.get(rows.size() - 1)));
+        }
+    }
+
+    @Getter
+    public static class Report {
+        private final boolean dryRun;
+        private LocalDateTime startedAt = LocalDateTime.now();
+        private LocalDateTime finishedAt;
+        private long scanned;
+        private long orphaned;
+        private long orphanedBytes;
+        private long reclaimedBytes;
+
+        Report(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        Report copy() {
+            Report copy = new Report(dryRun);
+            copy.startedAt = startedAt;
+            copy.finishedAt = finishedAt;
+            copy.scanned = scanned;
+            copy.orphaned = orphaned;
+            copy.orphanedBytes = orphanedBytes;
+            copy.reclaimedBytes = reclaimedBytes;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.thullo.service;
+
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.request.FileOfferRequest;
+import com.thullo.web.payload.response.FileOfferChallengeResponse;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static com.thullo.util.Helper.toHex;
+
+/**
+ * Issues and checks the challenges a client answers before a file is created from content the server already
+ * holds, so an offer only succeeds for a client that has the content itself and the hash of a file alone never
+ * reveals whether it is stored or hands it out.
+ * <p>
+ * A challenge is issued for every offer, whether the content is stored or not, and names a random range of
+ * at most {@code app.files.offer.challenge-bytes} bytes and a nonce. Challenges are signed tokens bound to the
+ * content, the size and the user, valid for {@code app.files.offer.challenge-ttl-seconds}, so no state is kept
+ * and any node can check them. They are signed with a key derived from {@code app.files.offer.secret}, which
+ * defaults to the secret of the auth tokens, so a challenge is never accepted as an auth token.
+ */
+@Component
+public class PossessionChallenger {
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] key;
+    private final long challengeBytes;
+    private final long ttlSeconds;
+
+    public PossessionChallenger(@Value("${app.files.offer.secret:${app.auth.token-secret}}") String secret,
+                                @Value("${app.files.offer.challenge-bytes:65536}") long challengeBytes,
+                                @Value("${app.files.offer.challenge-ttl-seconds:300}") long ttlSeconds) {
+        this.key = deriveKey(secret);
+        this.challengeBytes = challengeBytes;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public FileOfferChallengeResponse issue(FileOfferRequest request, String email) {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        long length = Math.min(challengeBytes, request.getFileSize());
+        long offset = (long) (random.nextDouble() * (request.getFileSize() - length + 1));
+        LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(ttlSeconds);
+
+        String challenge = Jwts.builder()
+                .claim("user", email)
+                .claim("hash", request.getContentHash().toLowerCase())
+                .claim("size", request.getFileSize())
+                .claim("nonce", toHex(nonce))
+                .claim("offset", offset)
+                .claim("length", length)
+                .setExpiration(Date.from(expiresAt.atZone(ZoneId.systemDefault()).toInstant()))
+                .signWith(SignatureAlgorithm.HS256, key)
+                .compact();
+        return new FileOfferChallengeResponse(challenge, toHex(nonce), offset, length, expiresAt);
+    }
+
+    /**
+     * Checks that the challenge of the offer was issued to the user for the offered content and hasn't expired.
+     *
+     * @return the range the proof of the offer covers
+     * @throws BadRequestException when the offer has no valid challenge
+     */
+    public Range verify(FileOfferRequest request, String email) throws BadRequestException {
+        if (request.getChallenge() == null || request.getProof() == null) {
+            throw new BadRequestException("Request a challenge and send its proof with the offer");
+        }
+        Claims claims;
+        try {
+            claims = Jwts.parser().setSigningKey(key).parseClaimsJws(request.getChallenge()).getBody();
+        } catch (JwtException | IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid or expired challenge");
+        }
+        if (!email.equals(claims.get("user", String.class))
+                || !request.getContentHash().equalsIgnoreCase(claims.get("hash", String.class))
+                || request.getFileSize() != claims.get("size", Number.class).longValue()) {
+            throw new BadRequestException("Challenge was issued for another offer");
+        }
+        return new Range(claims.get("nonce", String.class), claims.get("offset", Number.class).longValue(),
+                claims.get("length", Number.class).longValue());
+    }
+
+    private static byte[] deriveKey(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal("file-offer-challenge".getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to derive the key of offer challenges", ex);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Range {
+        private final String nonce;
+        private final long offset;
+        private final long length;
+    }
+}
@@ -0,0 +1,47 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.Board;
+import com.thullo.data.model.StorageUsage;
+import com.thullo.web.exception.BadRequestException;
+
+public interface StorageUsageService {
+    /**
+     * Checks that an upload of the given size to the board fits the storage quota of the board and of the user
+     * uploading it, from their counters alone.
+     *
+     * @throws BadRequestException when the upload would exceed one of the quotas
+     */
+    void checkQuota(Board board, String email, long bytes) throws BadRequestException;
+
+    /**
+     * Checks that an upload of the given size fits the storage quota of the user, for uploads not made to a board.
+     *
+     * @throws BadRequestException when the upload would exceed the quota
+     */
+    void checkUserQuota(String email, long bytes) throws BadRequestException;
+
+    /**
+     * Adds a new attachment to the usage of its board.
+     */
+    void recordUpload(Attachment attachment);
+
+    /**
+     * Removes a deleted attachment from the usage of its board.
+     */
+    void recordDelete(Attachment attachment);
+
+    StorageUsage getBoardUsage(String boardTag);
+
+    StorageUsage getUserUsage(String email);
+
+    /**
+     * Recomputes the counters of the boards from their attachments, filling in the sizes of attachments added
+     * before sizes were recorded from the metadata of their file, and the counters of the users from the files
+     * they uploaded. Unlike the other operations this reads every attachment. The versions of all boards are
+     * bumped once the counters have committed.
+     *
+     * @return the number of attachments counted
+     */
+    long rebuild();
+}
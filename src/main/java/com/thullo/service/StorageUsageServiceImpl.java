@@ -0,0 +1,165 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.Board;
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.StorageScope;
+import com.thullo.data.model.StorageUsage;
+import com.thullo.data.model.UploaderUsage;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.FilesRepository;
+import com.thullo.data.repository.StorageUsageRepository;
+import com.thullo.event.FileDeletedEvent;
+import com.thullo.event.FileUploadedEvent;
+import com.thullo.web.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+
+import static com.thullo.util.Helper.extractFileIdFromUrl;
+
+/**
+ * Keeps the storage used by the attachments of every board, and by the files every user uploaded, in
+ * {@link StorageUsage} counters. Quotas of {@code app.storage.quota.board-bytes} and
+ * {@code app.storage.quota.user-bytes} raw bytes are enforced when set above zero.
+ * <p>
+ * A file counts against the user who uploaded it, whichever path it came through: attachments, task and board
+ * covers, upload sessions, offers and files uploaded on their own. The counters of users follow the upload and
+ * deletion events of files, so a file counts from the moment it is stored until it is deleted, including by the
+ * collection of orphaned files. Quotas are checked before an upload and counted after it, so concurrent uploads
+ * can together overshoot a quota by the uploads in flight.
+ */
+@Slf4j
+@Service
+public class StorageUsageServiceImpl implements StorageUsageService {
+    private final StorageUsageRepository storageUsageRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final FilesRepository filesRepository;
+    private final FileService fileService;
+    private final BoardChangeService boardChangeService;
+    private final TransactionTemplate transactionTemplate;
+    private final long boardQuotaBytes;
+    private final long userQuotaBytes;
+
+    public StorageUsageServiceImpl(StorageUsageRepository storageUsageRepository, AttachmentRepository attachmentRepository,
+                                   FilesRepository filesRepository, FileService fileService, BoardChangeService boardChangeService,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${app.storage.quota.board-bytes:0}") long boardQuotaBytes,
+                                   @Value("${app.storage.quota.user-bytes:0}") long userQuotaBytes) {
+        this.storageUsageRepository = storageUsageRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.filesRepository = filesRepository;
+        this.fileService = fileService;
+        this.boardChangeService = boardChangeService;
+        this.transactionTemplate = transactionTemplate;
+        this.boardQuotaBytes = boardQuotaBytes;
+        this.userQuotaBytes = userQuotaBytes;
+    }
+
+    @Override
+    public void checkQuota(Board board, String email, long bytes) throws BadRequestException {
+        if (boardQuotaBytes > 0 && getBoardUsage(board.getBoardTag()).getRawBytes() + bytes > boardQuotaBytes) {
+            throw new BadRequestException("Storage quota of the board exceeded");
+        }
+        checkUserQuota(email, bytes);
+    }
+
+    @Override
+    public void checkUserQuota(String email, long bytes) throws BadRequestException {
+        if (userQuotaBytes > 0 && getUserUsage(email).getRawBytes() + bytes > userQuotaBytes) {
+            throw new BadRequestException("Storage quota exceeded");
+        }
+    }
+
+    @EventListener
+    public void onFileUploaded(FileUploadedEvent event) {
+        if (event.getUploadedBy() == null) return;
+        addUsage(StorageScope.USER, event.getUploadedBy(), 1, event.getFileSize(), orZero(event.getCompressedSize()));
+    }
+
+    @EventListener
+    public void onFileDeleted(FileDeletedEvent event) {
+        if (event.getUploadedBy() == null) return;
+        addUsage(StorageScope.USER, event.getUploadedBy(), -1, -event.getFileSize(), -orZero(event.getCompressedSize()));
+    }
+
+    @Override
+    public void recordUpload(Attachment attachment) {
+        addUsage(attachment, 1);
+    }
+
+    @Override
+    public void recordDelete(Attachment attachment) {
+        addUsage(attachment, -1);
+    }
+
+    @Override
+    public StorageUsage getBoardUsage(String boardTag) {
+        return storageUsageRepository.findByScopeAndScopeKey(StorageScope.BOARD, boardTag)
+                .orElseGet(() -> new StorageUsage(StorageScope.BOARD, boardTag));
+    }
+
+    @Override
+    public StorageUsage getUserUsage(String email) {
+        return storageUsageRepository.findByScopeAndScopeKey(StorageScope.USER, email)
+                .orElseGet(() -> new StorageUsage(StorageScope.USER, email));
+    }
+
+    @Override
+    public long rebuild() {
+        Long counted = transactionTemplate.execute(tx -> {
+            storageUsageRepository.deleteAllInBatch();
+            long attachments = 0;
+            for (Attachment attachment : attachmentRepository.findAll()) {
+                if (attachment.getRawSize() == null) fillSizes(attachment);
+                addUsage(attachment, 1);
+                attachments++;
+            }
+            for (UploaderUsage usage : filesRepository.sumUsageByUploader()) {
+                addUsage(StorageScope.USER, usage.getUploadedBy(), usage.getFileCount(), orZero(usage.getRawBytes()),
+                        orZero(usage.getStoredBytes()));
+            }
+            return attachments;
+        });
+        // the sizes of attachments may have been filled in
+        boardChangeService.allBoardsChanged();
+        return counted;
+    }
+
+    private void fillSizes(Attachment attachment) {
+        try {
+            FileData fileData = fileService.getFile(extractFileIdFromUrl(attachment.getFileUrl()));
+            if (fileData == null) return;
+            attachment.setRawSize(fileData.getFileSize());
+            attachment.setStoredSize(fileData.getCompressedSize());
+            attachmentRepository.save(attachment);
+        } catch (IOException ex) {
+            log.warn("Failed to read the size of attachment {}", attachment.getId(), ex);
+        }
+    }
+
+    private void addUsage(Attachment attachment, int sign) {
+        long rawBytes = attachment.getRawSize() != null ? attachment.getRawSize() : 0;
+        long storedBytes = orZero(attachment.getStoredSize());
+        addUsage(StorageScope.BOARD, attachment.getTask().getBoard().getBoardTag(), sign, sign * rawBytes, sign * storedBytes);
+    }
+
+    private static long orZero(Long bytes) {
+        return bytes != null ? bytes : 0;
+    }
+
+    private void addUsage(StorageScope scope, String scopeKey, long files, long rawBytes, long storedBytes) {
+        if (storageUsageRepository.addUsage(scope, scopeKey, files, rawBytes, storedBytes) > 0) return;
+        try {
+            storageUsageRepository.saveAndFlush(new StorageUsage(scope, scopeKey));
+        } catch (DataIntegrityViolationException ex) {
+            // created by a concurrent upload to the same scope
+        }
+        storageUsageRepository.addUsage(scope, scopeKey, files, rawBytes, storedBytes);
+    }
+}
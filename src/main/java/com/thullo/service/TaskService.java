@@ -16,23 +16,42 @@ public interface TaskService {
 
     Task moveTask(String boardRef, String status, Long index) throws ResourceNotFoundException;
 
-    Task editTask(String boardRef, TaskRequest taskRequest) throws BadRequestException, IOException, ResourceNotFoundException;
+    Task editTask(String boardRef, TaskRequest taskRequest, String email) throws BadRequestException, IOException, ResourceNotFoundException;
 
     Task getTask(String boardRef) throws ResourceNotFoundException;
     void deleteTask(String boardRef) throws ResourceNotFoundException;
 
-    List<Task> searchTask(String params);
+    /**
+     * Finds the tasks matching the search by name, board ref or attachment content, on the boards the user owns,
+     * collaborates on or contributes to.
+     */
+    List<Task> searchTask(String params, String email);
 
     void addContributors(String boardRef, Set<String> contributors) throws ResourceNotFoundException;
 
     void removeContributors(String boardRef, Set<String> contributors) throws ResourceNotFoundException;
 
-    Task updateTaskImage(String boardRef, MultipartFile coverImage, String requestUrl) throws ResourceNotFoundException, BadRequestException, IOException;
+    Task updateTaskImage(String boardRef, MultipartFile coverImage, String requestUrl, String email) throws ResourceNotFoundException, BadRequestException, IOException;
 
     String getTaskImageUrl(String boardRef) throws ResourceNotFoundException;
 
-    Attachment addAttachmentToTask(String boardRef, String url, MultipartFile file) throws ResourceNotFoundException, BadRequestException, IOException;
+    Attachment addAttachmentToTask(String boardRef, String url, MultipartFile file, String email) throws ResourceNotFoundException, BadRequestException, IOException;
 
-    void deleteAttachmentFromTask(String fileId, Long attachmentId);
+    /**
+     * Completes a resumable upload session and attaches the assembled file to the task.
+     */
+    Attachment addAttachmentToTask(String boardRef, String url, String sessionId, String email) throws ResourceNotFoundException, BadRequestException, IOException;
+
+    /**
+     * @throws ResourceNotFoundException when the task isn't on the board
+     */
+    List<Attachment> getAttachments(String boardTag, String boardRef) throws ResourceNotFoundException;
+
+    /**
+     * Deletes the attachment of the task and its file.
+     *
+     * @throws ResourceNotFoundException when the attachment doesn't belong to the task on the board
+     */
+    void deleteAttachmentFromTask(String boardTag, String boardRef, Long attachmentId) throws ResourceNotFoundException;
 }
 
@@ -8,15 +8,19 @@ import com.thullo.data.repository.UserRepository;
 import com.thullo.web.exception.BadRequestException;
 import com.thullo.web.exception.ResourceNotFoundException;
 import com.thullo.web.payload.request.TaskRequest;
+import com.thullo.web.payload.response.UploadSessionResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.thullo.util.Helper.*;
 import static java.lang.String.format;
@@ -34,26 +38,34 @@ public class TaskServiceImpl implements TaskService {
     private final RoleServiceImpl roleService;
     private final BoardRepository boardRepository;
     private final AttachmentRepository attachmentRepository;
-
+    private final UploadSessionService uploadSessionService;
+    private final StorageUsageService storageUsageService;
+    private final AttachmentIndexService attachmentIndexService;
+    private final BoardChangeService boardChangeService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Creates a task on the board. The cover image is uploaded before the transaction that saves the task, so no
+     * connection is held while the file is stored; a file left behind by a failed save is collected as unreferenced.
+     */
     @Override
     public Task createTask(String boardTag, String email, TaskRequest taskRequest) throws BadRequestException, IOException, ResourceNotFoundException {
         Task task = mapper.map(taskRequest, Task.class);
         Board board = getBoard(boardTag);
         User createdBy = userRepository.findUserByEmail(email);
-
-        task.setBoard(board);
         String taskStatus = taskRequest.getStatus();
         Status status = isNullOrEmpty(taskStatus) ? Status.BACKLOG : Status.getStatus(taskStatus.toLowerCase());
-        long position = taskRepository.countByBoardAndStatus(board, status);
 
-        task.setStatus(status);
-        task.setPosition(position);
-
-        String imageUrl = uploadTaskFile(taskRequest.getFile(), taskRequest.getRequestUrl());
-        task.setImageUrl(imageUrl);
-        task.setBoardRef(boardRefGenerator.generateBoardRef(board));
-        task.setCreatedBy(createdBy);
-        return taskRepository.save(task);
+        String imageUrl = uploadTaskFile(board, taskRequest.getFile(), taskRequest.getRequestUrl(), email);
+        return transactionTemplate.execute(tx -> {
+            task.setBoard(board);
+            task.setStatus(status);
+            task.setPosition(taskRepository.countByBoardAndStatus(board, status));
+            task.setImageUrl(imageUrl);
+            task.setBoardRef(boardRefGenerator.generateBoardRef(board));
+            task.setCreatedBy(createdBy);
+            return boardChanged(taskRepository.save(task), BoardChangeType.TASK_CREATED, null);
+        });
     }
 
     private Board getBoard(String boardTag) throws ResourceNotFoundException {
@@ -61,15 +73,17 @@ public class TaskServiceImpl implements TaskService {
                 .orElseThrow(() -> new ResourceNotFoundException("Board not found"));
     }
 
-    private String uploadTaskFile(MultipartFile file, String requestUrl) throws BadRequestException, IOException {
+    private String uploadTaskFile(Board board, MultipartFile file, String requestUrl, String email) throws BadRequestException, IOException {
         String imageUrl = null;
         if (file != null) {
-            imageUrl = fileService.uploadFile(file, requestUrl);
+            storageUsageService.checkQuota(board, email, file.getSize());
+            imageUrl = fileService.uploadFile(file, requestUrl, email);
         }
         return imageUrl;
     }
 
     @Override
+    @Transactional
     public Task moveTask(String boardRef, String status, Long position) throws ResourceNotFoundException {
         Status statusToUpdateTo = Status.getStatus(status);
         Task task = taskRepository.findByBoardRef(boardRef)
@@ -100,33 +114,52 @@ public class TaskServiceImpl implements TaskService {
         }
 
         task.setStatus(statusToUpdateTo);
-        return taskRepository.save(task);
+        return boardChanged(taskRepository.save(task), BoardChangeType.TASK_MOVED,
+                statusToUpdateTo.getContent() + ":" + task.getPosition());
     }
 
 
     @Override
-    public Task editTask(String boardRef, TaskRequest taskRequest) throws BadRequestException, IOException, ResourceNotFoundException {
+    public Task editTask(String boardRef, TaskRequest taskRequest, String email) throws BadRequestException, IOException, ResourceNotFoundException {
         Task task = getTask(boardRef);
-        mapper.map(taskRequest, task);
-        String imageUrl = uploadTaskFile(taskRequest.getFile(), taskRequest.getRequestUrl());
-        if (imageUrl != null) task.setImageUrl(imageUrl);
-        return taskRepository.save(task);
+        String imageUrl = uploadTaskFile(task.getBoard(), taskRequest.getFile(), taskRequest.getRequestUrl(), email);
+        return transactionTemplate.execute(tx -> {
+            mapper.map(taskRequest, task);
+            if (imageUrl != null) task.setImageUrl(imageUrl);
+            return boardChanged(taskRepository.save(task), BoardChangeType.TASK_UPDATED, null);
+        });
     }
 
+    /**
+     * Deletes the task. The storage counters are updated once the deletion has committed, like they are for
+     * every change of attachments, since creating a missing counter row may fail on a concurrent insert.
+     */
     @Override
     public void deleteTask(String boardRef) throws ResourceNotFoundException {
         Task task = getTask(boardRef);
-        if (task != null) {
+        List<Attachment> attachments = transactionTemplate.execute(tx -> {
+            List<Attachment> deleted = attachmentRepository.findByTask_BoardRefOrderById(boardRef);
             taskRepository.delete(task);
-        }
+            attachmentIndexService.removeTask(task.getId());
+            boardChanged(task, BoardChangeType.TASK_DELETED, null);
+            return deleted;
+        });
+        attachments.forEach(storageUsageService::recordDelete);
     }
 
     @Override
-    public List<Task> searchTask(String params) {
-        return taskRepository.findByParams(params);
+    public List<Task> searchTask(String params, String email) {
+        List<Task> tasks = taskRepository.findByParams(params, email);
+        Set<Long> found = tasks.stream().map(Task::getId).collect(Collectors.toSet());
+        List<Long> attachmentMatches = attachmentIndexService.findTaskIds(params, email).stream()
+                .filter(id -> !found.contains(id))
+                .collect(Collectors.toList());
+        if (!attachmentMatches.isEmpty()) tasks.addAll(taskRepository.findAllById(attachmentMatches));
+        return tasks;
     }
 
     @Override
+    @Transactional
     public void addContributors(String boardRef, Set<String> contributors) throws ResourceNotFoundException {
         String title = "You have been added as a contributor on task: " + boardRef;
         String message = "You have been added as a contributor on task " + boardRef;
@@ -141,9 +174,11 @@ public class TaskServiceImpl implements TaskService {
                 notificationService.sendNotificationToUser(contributor, message, title, NotificationType.ADDED_AS_CONTRIBUTOR);
             }
         }
+        boardChanged(task, BoardChangeType.CONTRIBUTORS_ADDED, null);
     }
 
     @Override
+    @Transactional
     public void removeContributors(String boardRef, Set<String> contributors) throws ResourceNotFoundException {
         String title = "You have been removed as a contributor on task: " + boardRef;
         String message = "You have been removed as a contributor on task " + boardRef;
@@ -156,22 +191,30 @@ public class TaskServiceImpl implements TaskService {
             roleService.removeTaskRoleFromUser(contributor, task);
             notificationService.sendNotificationToUser(contributor, message, title, NotificationType.REMOVE_AS_CONTRIBUTOR);
         }
+        boardChanged(task, BoardChangeType.CONTRIBUTORS_REMOVED, null);
     }
 
+    /**
+     * Replaces the cover image of the task. The new image is uploaded before the transaction that saves the task,
+     * and the old one is deleted once it has committed, so a failed save leaves the task with its old image.
+     */
     @Override
-    public Task updateTaskImage(String boardRef, MultipartFile coverImage, String requestUrl) throws ResourceNotFoundException, IOException, BadRequestException {
+    public Task updateTaskImage(String boardRef, MultipartFile coverImage, String requestUrl, String email)
+            throws ResourceNotFoundException, IOException, BadRequestException {
         Task task = getTask(boardRef);
-
         String imageUrl = task.getImageUrl();
+
+        String newImageUrl = uploadCoverImage(task.getBoard(), coverImage, requestUrl, email);
+        Task savedTask = transactionTemplate.execute(tx -> {
+            task.setImageUrl(newImageUrl);
+            return boardChanged(taskRepository.save(task), BoardChangeType.TASK_UPDATED, null);
+        });
+
         if (imageUrl != null) {
             String fileId = extractFileIdFromUrl(imageUrl);
             fileService.deleteFile(fileId);
         }
-
-        String newImageUrl = uploadCoverImage(coverImage, requestUrl);
-        task.setImageUrl(newImageUrl);
-
-        return taskRepository.save(task);
+        return savedTask;
     }
 
     @Override
@@ -181,32 +224,108 @@ public class TaskServiceImpl implements TaskService {
     }
 
     @Override
-    public Attachment addAttachmentToTask(String boardRef, String url, MultipartFile file)
+    public Attachment addAttachmentToTask(String boardRef, String url, MultipartFile file, String email)
             throws ResourceNotFoundException, BadRequestException, IOException {
         Task task = getTask(boardRef);
+        storageUsageService.checkQuota(task.getBoard(), email, file.getSize());
 
         Attachment attachment = new Attachment();
         attachment.setTask(task);
         attachment.setFileName(file.getOriginalFilename());
         attachment.setFileSize(calculateFileSize(file.getSize()));
-        String fileUrl = fileService.uploadFile(file, url);
+        String fileUrl = fileService.uploadFile(file, url, email);
         attachment.setFileUrl(fileUrl);
+        setSizes(attachment, file.getSize());
+
+        return saveAttachment(task, attachment);
+    }
+
+    @Override
+    public Attachment addAttachmentToTask(String boardRef, String url, String sessionId, String email)
+            throws ResourceNotFoundException, BadRequestException, IOException {
+        Task task = getTask(boardRef);
+        UploadSessionResponse session = uploadSessionService.getSession(sessionId, email);
+        storageUsageService.checkQuota(task.getBoard(), email, session.getFileSize());
 
-        Attachment savedAttachment = attachmentRepository.save(attachment);
-        task.getAttachments().add(savedAttachment);
-        taskRepository.save(task);
+        Attachment attachment = new Attachment();
+        attachment.setTask(task);
+        attachment.setFileName(session.getFileName());
+        attachment.setFileSize(calculateFileSize(session.getFileSize()));
+        attachment.setFileUrl(uploadSessionService.completeSession(sessionId, url, email));
+        setSizes(attachment, session.getFileSize());
+
+        return saveAttachment(task, attachment);
+    }
 
+    /**
+     * Records the uploaded and the stored size of the attachment. The stored size is left unknown while the
+     * file is being stored in the background.
+     */
+    private void setSizes(Attachment attachment, long rawSize) throws IOException {
+        attachment.setRawSize(rawSize);
+        FileData fileData = fileService.getFile(extractFileIdFromUrl(attachment.getFileUrl()));
+        if (fileData != null) attachment.setStoredSize(fileData.getCompressedSize());
+    }
+
+    /**
+     * Saves the attachment of an uploaded file and logs the change in one transaction. The storage counters and
+     * the content index are updated once it has committed.
+     */
+    private Attachment saveAttachment(Task task, Attachment attachment) {
+        Attachment savedAttachment = transactionTemplate.execute(tx -> {
+            Attachment saved = attachmentRepository.save(attachment);
+            task.getAttachments().add(saved);
+            taskRepository.save(task);
+            boardChanged(task, BoardChangeType.ATTACHMENT_ADDED, String.valueOf(saved.getId()));
+            return saved;
+        });
+        storageUsageService.recordUpload(savedAttachment);
+        attachmentIndexService.index(savedAttachment);
         return savedAttachment;
     }
 
     @Override
-    public void deleteAttachmentFromTask(String fileUrl, Long attachmentId) {
-        fileService.deleteFile(extractFileIdFromUrl(fileUrl));
-        attachmentRepository.findById(attachmentId).ifPresent(attachmentRepository::delete);
+    public List<Attachment> getAttachments(String boardTag, String boardRef) throws ResourceNotFoundException {
+        if (!isTaskOnBoard(getTask(boardRef), boardTag, boardRef)) {
+            throw new ResourceNotFoundException(format("Task %s not found on board %s", boardRef, boardTag));
+        }
+        return attachmentRepository.findByTask_BoardRefOrderById(boardRef);
+    }
+
+    /**
+     * Deletes the attachment and logs the change in one transaction. The file is deleted once it has committed.
+     * Attachments are only found on the task and board they belong to.
+     */
+    @Override
+    public void deleteAttachmentFromTask(String boardTag, String boardRef, Long attachmentId) throws ResourceNotFoundException {
+        Attachment attachment = transactionTemplate.execute(tx -> attachmentRepository.findById(attachmentId)
+                .filter(found -> isTaskOnBoard(found.getTask(), boardTag, boardRef))
+                .map(deleted -> {
+                    attachmentRepository.delete(deleted);
+                    attachmentIndexService.removeAttachment(deleted.getId());
+                    boardChanged(deleted.getTask(), BoardChangeType.ATTACHMENT_DELETED, String.valueOf(deleted.getId()));
+                    return deleted;
+                })
+                .orElse(null));
+        if (attachment == null) {
+            throw new ResourceNotFoundException(format("Attachment %d not found on task %s", attachmentId, boardRef));
+        }
+        fileService.deleteFile(extractFileIdFromUrl(attachment.getFileUrl()));
+        storageUsageService.recordDelete(attachment);
+    }
+
+    private static boolean isTaskOnBoard(Task task, String boardTag, String boardRef) {
+        return task.getBoardRef().equals(boardRef) && task.getBoard().getBoardTag().equalsIgnoreCase(boardTag);
+    }
+
+    private Task boardChanged(Task task, BoardChangeType type, String detail) {
+        boardChangeService.boardChanged(task.getBoard().getBoardTag(), type, task.getBoardRef(), detail);
+        return task;
     }
 
-    private String uploadCoverImage(MultipartFile coverImage, String requestUrl) throws IOException, BadRequestException {
-        return fileService.uploadFile(coverImage, requestUrl);
+    private String uploadCoverImage(Board board, MultipartFile coverImage, String requestUrl, String email) throws IOException, BadRequestException {
+        storageUsageService.checkQuota(board, email, coverImage.getSize());
+        return fileService.uploadFile(coverImage, requestUrl, email);
     }
 
     public Task getTask(String boardRef) throws ResourceNotFoundException {
@@ -0,0 +1,15 @@
+package com.thullo.service;
+
+public interface ThumbnailService {
+    /**
+     * Finds the file to serve for an image requested at the given width: the smallest thumbnail at least
+     * that wide, or the original when it is narrower than every thumbnail, isn't an image or is smaller than
+     * the thumbnail itself. Thumbnails missing for files uploaded before they were generated are scheduled
+     * for generation.
+     *
+     * @param fileId the id of the original file
+     * @param width  the width the image is displayed at
+     * @return the id of the file to serve, or {@code null} while the thumbnail is not generated yet
+     */
+    String findThumbnail(String fileId, int width);
+}
@@ -0,0 +1,211 @@
+package com.thullo.service;
+
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.FileDerivative;
+import com.thullo.data.model.FileMetadata;
+import com.thullo.data.repository.FileDerivativeRepository;
+import com.thullo.event.FileDeletedEvent;
+import com.thullo.event.FileUploadedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates fixed width thumbnails of uploaded images with ImageIO on the thumbnail executor, after the upload
+ * request has returned. All widths of an image are generated in one go, so the image is decoded once.
+ * <p>
+ * Every width gets a {@link FileDerivative} row once it is generated, pointing at the thumbnail or at nothing
+ * when the original should be served instead, so an image is never processed twice.
+ * <p>
+ * The size of an image is read from its header before it is decoded. Images of more than
+ * {@code app.files.thumbnail.max-pixels} pixels are served as they are, and large images are decoded with source
+ * subsampling down to about twice the largest width, so a small file declaring a huge image can't exhaust the heap.
+ */
+@Slf4j
+@Service
+public class ThumbnailServiceImpl implements ThumbnailService {
+    private static final Set<String> IMAGE_TYPES = Set.of("png", "jpg", "jpeg", "gif", "bmp");
+
+    private final FileService fileService;
+    private final FileDerivativeRepository fileDerivativeRepository;
+    private final TaskExecutor thumbnailExecutor;
+    private final int[] widths;
+    private final long maxPixels;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public ThumbnailServiceImpl(FileService fileService, FileDerivativeRepository fileDerivativeRepository,
+                                @Qualifier("thumbnailExecutor") TaskExecutor thumbnailExecutor,
+                                @Value("${app.files.thumbnail.widths:64,256,512}") int[] widths,
+                                @Value("${app.files.thumbnail.max-pixels:50000000}") long maxPixels) {
+        this.fileService = fileService;
+        this.fileDerivativeRepository = fileDerivativeRepository;
+        this.thumbnailExecutor = thumbnailExecutor;
+        this.widths = widths.clone();
+        Arrays.sort(this.widths);
+        this.maxPixels = maxPixels;
+    }
+
+    @Override
+    public String findThumbnail(String fileId, int width) {
+        Integer thumbnailWidth = Arrays.stream(widths).filter(w -> w >= width).boxed().findFirst().orElse(null);
+        if (thumbnailWidth == null) return fileId;
+
+        FileDerivative derivative = fileDerivativeRepository.findByOriginalFileIdAndWidth(fileId, thumbnailWidth).orElse(null);
+        if (derivative != null) return derivative.getFileId() != null ? derivative.getFileId() : fileId;
+
+        FileMetadata file = fileService.getFileMetadata(fileId);
+        if (file == null || !isImage(file.getFileType())) return fileId;
+        schedule(fileId);
+        return null;
+    }
+
+    @EventListener
+    public void onFileUploaded(FileUploadedEvent event) {
+        if (isImage(event.getFileType())) schedule(event.getFileId());
+    }
+
+    @EventListener
+    public void onFileDeleted(FileDeletedEvent event) {
+        List<FileDerivative> derivatives = fileDerivativeRepository.findByOriginalFileId(event.getFileId());
+        fileDerivativeRepository.deleteAll(derivatives);
+        derivatives.stream()
+                .filter(derivative -> derivative.getFileId() != null)
+                .forEach(derivative -> fileService.deleteFile(derivative.getFileId()));
+    }
+
+    private boolean isImage(String fileType) {
+        return fileType != null && IMAGE_TYPES.contains(fileType.toLowerCase());
+    }
+
+    private void schedule(String fileId) {
+        if (!inProgress.add(fileId)) return;
+        try {
+            thumbnailExecutor.execute(() -> {
+                try {
+                    generate(fileId);
+                } finally {
+                    inProgress.remove(fileId);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            inProgress.remove(fileId);
+            log.debug("Thumbnail queue is full, skipped file {}", fileId);
+        }
+    }
+
+    private void generate(String fileId) {
+        try {
+            FileData original = fileService.getFile(fileId);
+            if (original == null) return;
+            Path source = Files.createTempFile("thullo-thumbnail-", ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(source)) {
+                    fileService.writeFile(fileId, os);
+                }
+                generate(original, read(source));
+            } finally {
+                Files.deleteIfExists(source);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to generate thumbnails of file {}", fileId, ex);
+        }
+    }
+
+    /**
+     * Decodes the first image of the file, or returns {@code null} when no reader knows its format or it has
+     * more pixels than allowed.
+     */
+    private BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    log.info("Skipped thumbnails of a {}x{} image above the limit of {} pixels", width, height, maxPixels);
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = widths.length > 0 ? width / (2 * widths[widths.length - 1]) : 1;
+                if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void generate(FileData original, BufferedImage image) throws IOException {
+        boolean jpeg = original.getFileType().equalsIgnoreCase("jpg") || original.getFileType().equalsIgnoreCase("jpeg");
+        String format = jpeg ? "jpg" : "png";
+        String baseName = original.getFileName().contains(".")
+                ? original.getFileName().substring(0, original.getFileName().lastIndexOf("."))
+                : original.getFileName();
+
+        for (int width : widths) {
+            if (fileDerivativeRepository.existsByOriginalFileIdAndWidth(original.getFileId(), width)) continue;
+            String thumbnailId = null;
+            // images ImageIO can't decode are served as they are
+            if (image != null && image.getWidth() > width) {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                ImageIO.write(scale(image, width, jpeg), format, encoded);
+                thumbnailId = fileService.storeFile(baseName + "-" + width + "." + format, encoded.size(),
+                        new ByteArrayInputStream(encoded.toByteArray())).getFileId();
+            }
+            fileDerivativeRepository.save(new FileDerivative(original.getFileId(), width, thumbnailId));
+        }
+    }
+
+    /**
+     * Scales the image down in steps of at most half its size, which keeps bilinear interpolation from
+     * skipping source pixels and aliasing at large reductions.
+     */
+    private BufferedImage scale(BufferedImage image, int width, boolean opaque) {
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth > width);
+        return current;
+    }
+}
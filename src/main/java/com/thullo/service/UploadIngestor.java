@@ -0,0 +1,299 @@
+package com.thullo.service;
+
+import com.thullo.web.exception.UploadRejectedException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Stores uploads in the background when {@code app.upload.async.enabled} is set, so requests creating tasks and
+ * boards don't wait for the content to be compressed, hashed and written to the store. The request only copies
+ * the upload into the spool directory and answers with the url of the file id reserved for it; the file is
+ * {@link Status#PROCESSING} until a worker of the {@code uploadExecutor} has stored it.
+ * <p>
+ * Spooled uploads may hold at most {@code app.upload.async.spool-max-bytes} together. Uploads that don't fit, or
+ * that the executor queue can't take, are rejected with 503 instead of piling up.
+ * <p>
+ * Every spooled upload is described by a manifest next to its content, written once the content is complete, so
+ * the spool outlives the process: uploads left pending by a shutdown are stored again by {@link #recover} on the
+ * next start. An upload that fails to be stored keeps its spool and is reported {@link Status#FAILED} until
+ * {@code app.upload.async.failed-retention-minutes} have passed; a restart within that time retries it.
+ */
+@Slf4j
+@Component
+public class UploadIngestor {
+    private static final String CONTENT_SUFFIX = ".part";
+    private static final String MANIFEST_SUFFIX = ".upload";
+
+    private final TaskExecutor uploadExecutor;
+    @Getter
+    private final boolean enabled;
+    private final Path spoolDir;
+    private final long spoolMaxBytes;
+    private final long retryAfterSeconds;
+    private final long failedRetentionMillis;
+
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    public UploadIngestor(@Qualifier("uploadExecutor") TaskExecutor uploadExecutor,
+                          @Value("${app.upload.async.enabled:false}") boolean enabled,
+                          @Value("${app.upload.async.spool-dir:./data/upload-spool}") String spoolDir,
+                          @Value("${app.upload.async.spool-max-bytes:536870912}") long spoolMaxBytes,
+                          @Value("${app.upload.async.retry-after-seconds:5}") long retryAfterSeconds,
+                          @Value("${app.upload.async.failed-retention-minutes:60}") long failedRetentionMinutes) {
+        this.uploadExecutor = uploadExecutor;
+        this.enabled = enabled;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath().normalize();
+        this.spoolMaxBytes = spoolMaxBytes;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.failedRetentionMillis = TimeUnit.MINUTES.toMillis(failedRetentionMinutes);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(spoolDir);
+    }
+
+    /**
+     * Spools the content and hands it to a worker, which passes the spool file to {@code ingestion}.
+     *
+     * @param upload    the upload, reported as processing until the ingestion returns
+     * @param content   the content, read to the end and closed
+     * @param ingestion stores the spooled content, the spool file is deleted once it returns
+     * @throws UploadRejectedException when the spool or the executor queue is full
+     */
+    public void submit(SpooledUpload upload, InputStream content, Ingestion ingestion) throws IOException {
+        reserve(upload.getFileSize());
+        try (InputStream is = content; OutputStream os = Files.newOutputStream(contentFile(upload.getFileId()))) {
+            is.transferTo(os);
+            writeManifest(upload);
+        } catch (IOException | RuntimeException ex) {
+            release(upload);
+            throw ex;
+        }
+
+        pending.put(upload.getFileId(), new Pending(upload));
+        try {
+            uploadExecutor.execute(() -> ingest(upload, ingestion));
+        } catch (TaskRejectedException ex) {
+            pending.remove(upload.getFileId());
+            release(upload);
+            throw new UploadRejectedException("Too many uploads are being processed, try again later",
+                    HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+        }
+    }
+
+    /**
+     * Stores again the uploads spooled before the last shutdown, whose urls were already handed out. Content
+     * without a manifest was never confirmed to a client and is deleted, a manifest without content is reported
+     * as failed. Uploads the executor queue can't take are stored by the calling thread.
+     *
+     * @return the number of uploads recovered
+     */
+    public int recover(Ingestion ingestion) throws IOException {
+        if (!enabled) return 0;
+        int recovered = 0;
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(CONTENT_SUFFIX)) {
+                    String fileId = name.substring(0, name.length() - CONTENT_SUFFIX.length());
+                    if (Files.notExists(manifestFile(fileId))) deleteSpoolFile(file);
+                } else if (name.endsWith(MANIFEST_SUFFIX) && recover(file, ingestion)) {
+                    recovered++;
+                }
+            }
+        }
+        if (recovered > 0) log.info("Recovered {} spooled uploads", recovered);
+        return recovered;
+    }
+
+    private boolean recover(Path manifestFile, Ingestion ingestion) {
+        SpooledUpload upload;
+        try {
+            upload = readManifest(manifestFile);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Failed to read spooled upload {}", manifestFile, ex);
+            deleteSpoolFile(manifestFile);
+            return false;
+        }
+        Pending recovered = new Pending(upload);
+        pending.put(upload.getFileId(), recovered);
+        spooledBytes.addAndGet(upload.getFileSize());
+        if (Files.notExists(contentFile(upload.getFileId()))) {
+            log.error("Content of spooled upload {} is missing", upload.getFileId());
+            recovered.fail();
+            return false;
+        }
+        try {
+            uploadExecutor.execute(() -> ingest(upload, ingestion));
+        } catch (TaskRejectedException ex) {
+            ingest(upload, ingestion);
+        }
+        return true;
+    }
+
+    /**
+     * @return the status of an upload submitted on this node, or {@code null} when the upload isn't pending and
+     * didn't fail recently
+     */
+    public Status getStatus(String fileId) {
+        Pending upload = pending.get(fileId);
+        return upload != null ? upload.status : null;
+    }
+
+    public long getSpooledBytes() {
+        return spooledBytes.get();
+    }
+
+    /**
+     * Forgets uploads that failed longer than the retention ago and deletes their spool.
+     */
+    @Scheduled(fixedDelayString = "${app.upload.async.cleanup-delay-ms:600000}")
+    public void purgeFailed() {
+        long failedBefore = System.currentTimeMillis() - failedRetentionMillis;
+        pending.values().removeIf(upload -> {
+            if (upload.status != Status.FAILED || upload.failedAt > failedBefore) return false;
+            release(upload.upload);
+            return true;
+        });
+    }
+
+    private void ingest(SpooledUpload upload, Ingestion ingestion) {
+        try {
+            ingestion.ingest(upload, contentFile(upload.getFileId()));
+        } catch (IOException | RuntimeException ex) {
+            // the spool is kept for a restart to retry until the failure is purged
+            log.error("Failed to store upload {}", upload.getFileId(), ex);
+            pending.get(upload.getFileId()).fail();
+            return;
+        }
+        pending.remove(upload.getFileId());
+        release(upload);
+    }
+
+    private void reserve(long fileSize) {
+        long used;
+        do {
+            used = spooledBytes.get();
+            if (used + fileSize > spoolMaxBytes) {
+                throw new UploadRejectedException("Too many uploads are being processed, try again later",
+                        HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+            }
+        } while (!spooledBytes.compareAndSet(used, used + fileSize));
+    }
+
+    private void release(SpooledUpload upload) {
+        deleteSpoolFile(manifestFile(upload.getFileId()));
+        deleteSpoolFile(contentFile(upload.getFileId()));
+        spooledBytes.addAndGet(-upload.getFileSize());
+    }
+
+    private Path contentFile(String fileId) {
+        return spoolDir.resolve(fileId + CONTENT_SUFFIX);
+    }
+
+    private Path manifestFile(String fileId) {
+        return spoolDir.resolve(fileId + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Writes the manifest of the upload, renamed into place once complete so a manifest is never read half written.
+     */
+    private void writeManifest(SpooledUpload upload) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("fileId", upload.getFileId());
+        manifest.setProperty("fileName", upload.getFileName());
+        manifest.setProperty("fileSize", String.valueOf(upload.getFileSize()));
+        if (upload.getUploadedBy() != null) manifest.setProperty("uploadedBy", upload.getUploadedBy());
+        Path tempFile = Files.createTempFile(spoolDir, upload.getFileId(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                manifest.store(writer, null);
+            }
+            Files.move(tempFile, manifestFile(upload.getFileId()), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private SpooledUpload readManifest(Path manifestFile) throws IOException {
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            manifest.load(reader);
+        }
+        return new SpooledUpload(manifest.getProperty("fileId"), manifest.getProperty("fileName"),
+                Long.parseLong(manifest.getProperty("fileSize")), manifest.getProperty("uploadedBy"));
+    }
+
+    private void deleteSpoolFile(Path spoolFile) {
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException ex) {
+            log.warn("Failed to delete spooled upload {}", spoolFile, ex);
+        }
+    }
+
+    public enum Status {
+        PROCESSING, READY, FAILED
+    }
+
+    @FunctionalInterface
+    public interface Ingestion {
+        void ingest(SpooledUpload upload, Path spoolFile) throws IOException;
+    }
+
+    /**
+     * What is known of a spooled upload besides its content, enough to store it after a restart.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class SpooledUpload {
+        private final String fileId;
+        private final String fileName;
+        private final long fileSize;
+        private final String uploadedBy;
+    }
+
+    private static class Pending {
+        private final SpooledUpload upload;
+        private volatile Status status = Status.PROCESSING;
+        private volatile long failedAt;
+
+        private Pending(SpooledUpload upload) {
+            this.upload = upload;
+        }
+
+        private void fail() {
+            failedAt = System.currentTimeMillis();
+            status = Status.FAILED;
+        }
+    }
+}
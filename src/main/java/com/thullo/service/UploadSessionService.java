@@ -0,0 +1,36 @@
+package com.thullo.service;
+
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.exception.ResourceNotFoundException;
+import com.thullo.web.payload.request.UploadSessionRequest;
+import com.thullo.web.payload.response.UploadSessionResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface UploadSessionService {
+    UploadSessionResponse createSession(UploadSessionRequest request, String email) throws BadRequestException, IOException;
+
+    /**
+     * Returns the session with the chunks received so far, so an interrupted client knows which to resend.
+     */
+    UploadSessionResponse getSession(String sessionId, String email) throws ResourceNotFoundException, IOException;
+
+    /**
+     * Spools a chunk to disk. Sending a chunk again replaces it, so retries are safe.
+     *
+     * @param index   the zero based number of the chunk
+     * @param content the body of the chunk, which must be exactly the chunk size except for the last chunk
+     */
+    UploadSessionResponse writeChunk(String sessionId, int index, InputStream content, String email)
+            throws ResourceNotFoundException, BadRequestException, IOException;
+
+    /**
+     * Assembles the chunks into the configured file store and removes the session.
+     *
+     * @return the url of the new file
+     */
+    String completeSession(String sessionId, String url, String email) throws ResourceNotFoundException, BadRequestException, IOException;
+
+    void abortSession(String sessionId, String email) throws ResourceNotFoundException, IOException;
+}
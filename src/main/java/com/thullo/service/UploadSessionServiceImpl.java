@@ -0,0 +1,239 @@
+package com.thullo.service;
+
+import com.thullo.data.model.UploadSession;
+import com.thullo.data.repository.UploadSessionRepository;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.exception.ResourceNotFoundException;
+import com.thullo.web.payload.request.UploadSessionRequest;
+import com.thullo.web.payload.response.UploadSessionResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Resumable uploads spooled to {@code app.upload.session.dir}, one directory per session holding a
+ * {@code <index>.part} file per received chunk. Chunks are written to a temporary file and renamed into place,
+ * so a chunk file is always complete and the directory listing is the record of what has arrived.
+ * <p>
+ * Sessions not touched for {@code app.upload.session.ttl-minutes} are removed with their chunks.
+ */
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String CHUNK_SUFFIX = ".part";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileService fileService;
+    private final StorageUsageService storageUsageService;
+    private final Path root;
+    private final long chunkSize;
+    private final long maxFileSize;
+    private final long ttlMinutes;
+
+    public UploadSessionServiceImpl(UploadSessionRepository uploadSessionRepository, FileService fileService,
+                                    StorageUsageService storageUsageService,
+                                    @Value("${app.upload.session.dir:./data/uploads}") String root,
+                                    @Value("${app.upload.session.chunk-size:5242880}") long chunkSize,
+                                    @Value("${app.upload.session.max-file-size:1073741824}") long maxFileSize,
+                                    @Value("${app.upload.session.ttl-minutes:1440}") long ttlMinutes) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileService = fileService;
+        this.storageUsageService = storageUsageService;
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.maxFileSize = maxFileSize;
+        this.ttlMinutes = ttlMinutes;
+    }
+
+    @Override
+    public UploadSessionResponse createSession(UploadSessionRequest request, String email) throws BadRequestException, IOException {
+        if (request.getFileSize() > maxFileSize) {
+            throw new BadRequestException(format("File cannot be larger than %d bytes", maxFileSize));
+        }
+        storageUsageService.checkUserQuota(email, request.getFileSize());
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), request.getFileName(),
+                request.getFileSize(), chunkSize, email);
+        session.setExpiresAt(LocalDateTime.now().plusMinutes(ttlMinutes));
+        Files.createDirectories(sessionDir(session));
+        return toResponse(uploadSessionRepository.save(session), List.of());
+    }
+
+    @Override
+    public UploadSessionResponse getSession(String sessionId, String email) throws ResourceNotFoundException, IOException {
+        UploadSession session = findSession(sessionId, email);
+        return toResponse(session, receivedChunks(session));
+    }
+
+    @Override
+    public UploadSessionResponse writeChunk(String sessionId, int index, InputStream content, String email)
+            throws ResourceNotFoundException, BadRequestException, IOException {
+        UploadSession session = findSession(sessionId, email);
+        if (session.isCompleting()) throw new BadRequestException("Upload session is being completed");
+        if (index < 0 || index >= session.getTotalChunks()) {
+            throw new BadRequestException(format("Chunk index must be between 0 and %d", session.getTotalChunks() - 1));
+        }
+
+        Path dir = sessionDir(session);
+        long expected = session.chunkLength(index);
+        Path part = Files.createTempFile(dir, "chunk-", ".tmp");
+        try {
+            long written;
+            try (OutputStream os = Files.newOutputStream(part)) {
+                // read one byte past the expected length to detect oversized chunks without buffering them
+                written = copy(content, os, expected + 1);
+            }
+            if (written != expected) throw new BadRequestException(format("Chunk %d must be %d bytes", index, expected));
+            Files.move(part, chunkPath(dir, index), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(ttlMinutes);
+        uploadSessionRepository.updateExpiresAt(sessionId, expiresAt);
+        session.setExpiresAt(expiresAt);
+        return toResponse(session, receivedChunks(session));
+    }
+
+    @Override
+    public String completeSession(String sessionId, String url, String email)
+            throws ResourceNotFoundException, BadRequestException, IOException {
+        UploadSession session = findSession(sessionId, email);
+        int missing = session.getTotalChunks() - receivedChunks(session).size();
+        if (missing > 0) throw new BadRequestException(format("Upload is missing %d chunks", missing));
+        if (uploadSessionRepository.markCompleting(sessionId) == 0) {
+            throw new BadRequestException("Upload session is already being completed");
+        }
+
+        Path dir = sessionDir(session);
+        boolean completed = false;
+        try {
+            String fileUrl = fileService.uploadFile(session.getFileName(), session.getFileSize(),
+                    new SequenceInputStream(chunkStreams(dir, session.getTotalChunks())), url, email);
+            uploadSessionRepository.delete(session);
+            completed = true;
+            deleteSessionDir(dir);
+            return fileUrl;
+        } finally {
+            if (!completed) uploadSessionRepository.clearCompleting(sessionId);
+        }
+    }
+
+    @Override
+    public void abortSession(String sessionId, String email) throws ResourceNotFoundException, IOException {
+        UploadSession session = findSession(sessionId, email);
+        uploadSessionRepository.delete(session);
+        deleteSessionDir(sessionDir(session));
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.session.cleanup-delay-ms:600000}")
+    public void expireSessions() {
+        List<UploadSession> expired = uploadSessionRepository.findByExpiresAtBefore(LocalDateTime.now());
+        for (UploadSession session : expired) {
+            try {
+                uploadSessionRepository.delete(session);
+                deleteSessionDir(sessionDir(session));
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Failed to remove expired upload session {}", session.getSessionId(), ex);
+            }
+        }
+        if (!expired.isEmpty()) log.info("Removed {} expired upload sessions", expired.size());
+    }
+
+    private UploadSession findSession(String sessionId, String email) throws ResourceNotFoundException {
+        return uploadSessionRepository.findBySessionId(sessionId)
+                .filter(session -> session.getOwnerEmail().equals(email))
+                .orElseThrow(() -> new ResourceNotFoundException(format("Upload session %s not found", sessionId)));
+    }
+
+    private List<Integer> receivedChunks(UploadSession session) throws IOException {
+        List<Integer> chunks = new ArrayList<>();
+        try (Stream<Path> files = Files.list(sessionDir(session))) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(CHUNK_SUFFIX))
+                    .map(name -> Integer.valueOf(name.substring(0, name.length() - CHUNK_SUFFIX.length())))
+                    .sorted()
+                    .forEach(chunks::add);
+        }
+        return chunks;
+    }
+
+    /**
+     * Opens the chunk files one at a time as the assembled stream reaches them.
+     */
+    private Enumeration<InputStream> chunkStreams(Path dir, int totalChunks) {
+        return new Enumeration<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < totalChunks;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(chunkPath(dir, next++));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+    }
+
+    private Path sessionDir(UploadSession session) {
+        return root.resolve(session.getSessionId());
+    }
+
+    private Path chunkPath(Path dir, int index) {
+        return dir.resolve(index + CHUNK_SUFFIX);
+    }
+
+    private void deleteSessionDir(Path dir) throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    private long copy(InputStream is, OutputStream os, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        int len;
+        while (written < length && (len = is.read(buffer, 0, (int) Math.min(buffer.length, length - written))) != -1) {
+            os.write(buffer, 0, len);
+            written += len;
+        }
+        return written;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<Integer> receivedChunks) {
+        UploadSessionResponse response = new UploadSessionResponse();
+        response.setSessionId(session.getSessionId());
+        response.setFileName(session.getFileName());
+        response.setFileSize(session.getFileSize());
+        response.setChunkSize(session.getChunkSize());
+        response.setTotalChunks(session.getTotalChunks());
+        response.setReceivedChunks(receivedChunks);
+        response.setReceivedBytes(receivedChunks.stream().mapToLong(session::chunkLength).sum());
+        response.setExpiresAt(session.getExpiresAt());
+        return response;
+    }
+}
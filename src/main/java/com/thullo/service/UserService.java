@@ -20,6 +20,14 @@ public interface UserService {
      */
     UserProfileResponse getUserDetails(String email) throws UserException;
 
+    /**
+     * Returns the version of the profile of the user, bumped by every update of it, without loading the user.
+     *
+     * @param email The email of the user.
+     * @return the version, or {@code null} when there is no such user
+     */
+    Long getProfileVersion(String email);
+
     /**
      * Updates the user details for a given email.
      *
@@ -21,6 +21,7 @@ public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final ModelMapper mapper;
+    private final BoardChangeService boardChangeService;
 
     /**
      * Retrieves user information from the database and returns it as a User object.
@@ -33,6 +34,11 @@ public class UserServiceImpl implements UserService {
         return mapper.map(user, UserProfileResponse.class);
     }
 
+    @Override
+    public Long getProfileVersion(String email) {
+        return userRepository.findVersionByEmail(email).orElse(null);
+    }
+
     /**
      * Updates the user details for a given email.
      *
@@ -43,7 +49,9 @@ public class UserServiceImpl implements UserService {
     public void updateUserDetails(UserProfileRequest userRequest, String email) throws UserException {
         User user = internalFindUserByEmail(email);
         mapper.map(userRequest, user);
+        user.setVersion(user.getVersion() + 1);
         userRepository.save(user);
+        boardChangeService.userChanged(email);
     }
 
     /**
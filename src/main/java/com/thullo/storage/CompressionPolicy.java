@@ -0,0 +1,104 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.ContentCodec;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how the content of an upload is encoded before it is written to a {@link FileStore}.
+ * <ul>
+ *     <li>file types that are already compressed (images, pdf, archives, media) are stored as-is,</li>
+ *     <li>uploads smaller than {@code app.storage.compression.min-size} are stored as-is,</li>
+ *     <li>file types with a rule in {@code app.storage.compression.rules} ({@code type:codec[:level]}, comma
+ *     separated) use the codec and level of the rule,</li>
+ *     <li>anything else is sampled and stored as-is when the sample doesn't compress below
+ *     {@code app.storage.compression.min-ratio}, otherwise the default codec and level are used.</li>
+ * </ul>
+ */
+@Component
+public class CompressionPolicy {
+    private final Set<String> compressedTypes;
+    private final Map<String, Decision> rules = new HashMap<>();
+    private final Decision defaultDecision;
+    private final long minSize;
+    private final double minRatio;
+    @Getter
+    private final int sampleSize;
+
+    public CompressionPolicy(@Value("${app.storage.compression.skip-types:png,jpg,jpeg,gif,webp,pdf,zip,gz,7z,rar,mp3,mp4,mov,webm}") String[] compressedTypes,
+                             @Value("${app.storage.compression.rules:}") String[] rules,
+                             @Value("${app.storage.compression.default-codec:gzip}") String defaultCodec,
+                             @Value("${app.storage.compression.default-level:6}") int defaultLevel,
+                             @Value("${app.storage.compression.min-size:512}") long minSize,
+                             @Value("${app.storage.compression.min-ratio:0.9}") double minRatio,
+                             @Value("${app.storage.compression.sample-size:65536}") int sampleSize) {
+        this.compressedTypes = Arrays.stream(compressedTypes)
+                .map(type -> type.trim().toLowerCase())
+                .collect(Collectors.toSet());
+        for (String rule : rules) {
+            if (rule.isBlank()) continue;
+            String[] parts = rule.trim().split(":");
+            int level = parts.length > 2 ? Integer.parseInt(parts[2]) : defaultLevel;
+            this.rules.put(parts[0].toLowerCase(), new Decision(ContentCodec.getCodec(parts[1]), level));
+        }
+        this.defaultDecision = new Decision(ContentCodec.getCodec(defaultCodec), defaultLevel);
+        this.minSize = minSize;
+        this.minRatio = minRatio;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * @param fileType     the extension of the uploaded file
+     * @param size         the size of the upload in bytes
+     * @param sample       the first bytes of the upload
+     * @param sampleLength the number of valid bytes in the sample
+     */
+    public Decision decide(String fileType, long size, byte[] sample, int sampleLength) {
+        String type = fileType == null ? "" : fileType.toLowerCase();
+        if (compressedTypes.contains(type) || size < minSize) return Decision.STORE;
+
+        Decision rule = rules.get(type);
+        if (rule != null) return rule;
+
+        return isCompressible(sample, sampleLength) ? defaultDecision : Decision.STORE;
+    }
+
+    /**
+     * Compresses the sample with the fastest deflate level, which is a good lower bound of the
+     * gain any codec will achieve on the whole content.
+     */
+    boolean isCompressible(byte[] sample, int sampleLength) {
+        if (sampleLength == 0) return false;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            long compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+            }
+            return compressedLength < sampleLength * minRatio;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Decision {
+        public static final Decision STORE = new Decision(ContentCodec.IDENTITY, Deflater.NO_COMPRESSION);
+
+        private final ContentCodec codec;
+        private final int level;
+    }
+}
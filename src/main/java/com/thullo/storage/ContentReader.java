@@ -0,0 +1,9 @@
+package com.thullo.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@FunctionalInterface
+public interface ContentReader {
+    void read(InputStream content) throws IOException;
+}
@@ -0,0 +1,74 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.FileContent;
+import com.thullo.data.model.StorageType;
+import com.thullo.data.repository.FileContentRepository;
+import com.thullo.data.repository.LegacyFileContentRepository;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.jdbc.BlobProxy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps file content as a blob in the {@code file_content} table. Content of files uploaded before the
+ * stores were introduced still lives inline in {@code file_data} and is read from there until migrated.
+ */
+@Component
+@RequiredArgsConstructor
+public class DatabaseFileStore implements FileStore {
+    private final FileContentRepository fileContentRepository;
+    private final LegacyFileContentRepository legacyFileContentRepository;
+
+    @Override
+    public StorageType getStorageType() {
+        return StorageType.DATABASE;
+    }
+
+    @Override
+    @Transactional
+    public void write(String storageKey, Path source) throws IOException {
+        fileContentRepository.deleteByStorageKey(storageKey);
+        try (InputStream content = Files.newInputStream(source)) {
+            Blob blob = BlobProxy.generateProxy(content, Files.size(source));
+            fileContentRepository.saveAndFlush(new FileContent(storageKey, blob));
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void read(String storageKey, ContentReader reader) throws IOException {
+        read(storageKey, 0, reader);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void read(String storageKey, long offset, ContentReader reader) throws IOException {
+        Blob blob = fileContentRepository.findContentByStorageKey(storageKey)
+                .or(() -> legacyFileContentRepository.findContentByFileId(storageKey))
+                .orElse(null);
+        if (blob == null) throw new FileNotFoundException(format("No content stored under key %s", storageKey));
+
+        try (InputStream content = offset == 0 ? blob.getBinaryStream() : blob.getBinaryStream(offset + 1, blob.length() - offset)) {
+            reader.read(content);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void delete(String storageKey) {
+        fileContentRepository.deleteByStorageKey(storageKey);
+        legacyFileContentRepository.clearContent(storageKey);
+    }
+}
@@ -0,0 +1,193 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.ContentCodec;
+import com.thullo.data.model.FileBlob;
+import com.thullo.data.model.FileData;
+import com.thullo.data.repository.FileBlobRepository;
+import com.thullo.data.repository.FilesRepository;
+import com.thullo.data.repository.LegacyFileContentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps every unique content once in the file stores and counts the files referencing it.
+ * <p>
+ * Content is addressed by the SHA-256 hash of the original bytes. Acquiring, releasing and relocating a blob
+ * all lock its row before changing it, so content is never reclaimed while another upload is about to
+ * reference it.
+ * New content is written to the store under a key of its own, outside any transaction, and only then
+ * published as the blob of its hash. Two uploads of the same new content race to publish, the loser finds the
+ * winner's blob on retry and deletes its own copy, so stored content is never replaced by content encoded with
+ * another codec, and content that never gets published doesn't stay in the store.
+ */
+@Slf4j
+@Component
+public class FileBlobRegistry {
+    private static final int MAX_PUBLISH_ATTEMPTS = 3;
+
+    private final FileBlobRepository fileBlobRepository;
+    private final FilesRepository filesRepository;
+    private final LegacyFileContentRepository legacyFileContentRepository;
+    private final FileStoreResolver fileStoreResolver;
+    private final TransactionTemplate transactionTemplate;
+
+    public FileBlobRegistry(FileBlobRepository fileBlobRepository, FilesRepository filesRepository,
+                            LegacyFileContentRepository legacyFileContentRepository, FileStoreResolver fileStoreResolver,
+                            PlatformTransactionManager transactionManager) {
+        this.fileBlobRepository = fileBlobRepository;
+        this.filesRepository = filesRepository;
+        this.legacyFileContentRepository = legacyFileContentRepository;
+        this.fileStoreResolver = fileStoreResolver;
+        // every attempt runs on its own, a failed attempt must not mark the transaction of a caller rollback-only
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Saves the file pointing at the blob holding its content, adding a reference to an existing blob or
+     * writing the encoded content in {@code source} to the store for its size when the content is new.
+     */
+    public FileData acquire(FileData fileData, Path source) throws IOException {
+        FileData shared = acquireExisting(fileData);
+        if (shared != null) return shared;
+
+        long storedSize = Files.size(source);
+        FileStore fileStore = fileStoreResolver.getStoreFor(storedSize);
+        String storageKey = format("%s-%s", fileData.getContentHash(), UUID.randomUUID());
+        fileStore.write(storageKey, source);
+        FileData saved = null;
+        try {
+            saved = publish(fileData, fileStore, storageKey, storedSize);
+            return saved;
+        } finally {
+            if (saved == null || !storageKey.equals(saved.getStorageKey())) {
+                // lost the race to a concurrent upload of the same content, or failed to publish at all
+                deleteUnpublished(fileStore, storageKey);
+            }
+        }
+    }
+
+    private void deleteUnpublished(FileStore fileStore, String storageKey) {
+        try {
+            fileStore.delete(storageKey);
+        } catch (IOException ex) {
+            log.warn("Failed to delete unpublished content {}", storageKey, ex);
+        }
+    }
+
+    private FileData publish(FileData fileData, FileStore fileStore, String storageKey, long storedSize) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(tx -> {
+                    Optional<FileBlob> existing = fileBlobRepository.findByContentHashForUpdate(fileData.getContentHash());
+                    if (existing.isPresent()) return addReference(fileData, existing.get());
+                    FileBlob blob = fileBlobRepository.saveAndFlush(new FileBlob(fileData.getContentHash(), storageKey,
+                            fileStore.getStorageType(), fileData.getCodec(), fileData.getFileSize(), storedSize));
+                    return saveReferencing(fileData, blob);
+                });
+            } catch (DataIntegrityViolationException | PessimisticLockingFailureException ex) {
+                // a concurrent upload published the same content first, or MySQL picked this upload as the loser
+                // of the gap locks both took looking for the missing blob
+                if (attempt == MAX_PUBLISH_ATTEMPTS) throw ex;
+                log.debug("Retrying to publish content {} after {}", fileData.getContentHash(), ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Saves the file pointing at an existing blob with the file's content hash and size, without any content
+     * being sent. Returns {@code null} when no such blob exists and the content has to be uploaded.
+     */
+    public FileData acquireExisting(FileData fileData) {
+        return transactionTemplate.execute(tx -> fileBlobRepository.findByContentHashForUpdate(fileData.getContentHash())
+                .filter(existing -> existing.getFileSize().equals(fileData.getFileSize()))
+                .map(blob -> addReference(fileData, blob))
+                .orElse(null));
+    }
+
+    private FileData addReference(FileData fileData, FileBlob blob) {
+        blob.setReferenceCount(blob.getReferenceCount() + 1);
+        return saveReferencing(fileData, blob);
+    }
+
+    private FileData saveReferencing(FileData fileData, FileBlob blob) {
+        fileData.setStorageKey(blob.getStorageKey());
+        fileData.setStorageType(blob.getStorageType());
+        fileData.setCodec(blob.getCodec());
+        fileData.setCompressedSize(blob.getCompressedSize());
+        return filesRepository.save(fileData);
+    }
+
+    /**
+     * Deletes the file and drops its reference to its content, deleting the content once nothing references it.
+     * Files stored before blobs were shared own their content, which is deleted right away.
+     *
+     * @return the number of stored bytes freed, {@code 0} when the content is still referenced or its size unknown
+     */
+    @Transactional
+    public long release(FileData fileData) throws IOException {
+        filesRepository.deleteByFileId(fileData.getFileId());
+        String storageKey = fileData.resolveStorageKey();
+        Optional<FileBlob> existing = fileBlobRepository.findByStorageKeyForUpdate(storageKey);
+        if (existing.isEmpty()) {
+            fileStoreResolver.getStore(fileData).delete(storageKey);
+            return fileData.getCompressedSize() != null ? fileData.getCompressedSize() : 0;
+        }
+        FileBlob blob = existing.get();
+        if (blob.getReferenceCount() > 1) {
+            blob.setReferenceCount(blob.getReferenceCount() - 1);
+            return 0;
+        }
+        fileStoreResolver.getStore(blob.getStorageType()).delete(storageKey);
+        fileBlobRepository.delete(blob);
+        log.debug("Reclaimed blob {}", storageKey);
+        return blob.getCompressedSize();
+    }
+
+    /**
+     * Moves the content of the file, already copied to {@code content}, to the {@code target} store and
+     * switches every file sharing it over before removing it from its current store. The copy is deleted from
+     * the target store again when the switch fails, and the source is only deleted once the switch committed.
+     */
+    public void relocate(FileData fileData, FileStore target, Path content) throws IOException {
+        String storageKey = fileData.resolveStorageKey();
+        FileStore source = fileStoreResolver.getStore(fileData);
+
+        target.write(storageKey, content);
+        boolean switched = false;
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                Optional<FileBlob> blob = fileBlobRepository.findByStorageKeyForUpdate(storageKey);
+                if (blob.isPresent()) {
+                    blob.get().setStorageType(target.getStorageType());
+                    filesRepository.updateStorageByKey(storageKey, target.getStorageType());
+                } else {
+                    filesRepository.updateStorage(fileData.getId(), storageKey, target.getStorageType());
+                }
+                if (source == target) {
+                    // legacy content kept inline in file_data that now lives in the store itself
+                    legacyFileContentRepository.clearContent(fileData.getFileId());
+                }
+            });
+            switched = true;
+        } finally {
+            // a copy in the store the file already lives in is its only content
+            if (!switched && source != target) deleteUnpublished(target, storageKey);
+        }
+        if (source != target) source.delete(storageKey);
+    }
+}
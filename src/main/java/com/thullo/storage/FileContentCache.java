@@ -0,0 +1,297 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.FileData;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the stored content and metadata of frequently served small files in memory, keyed by file id, so
+ * serving them takes neither a metadata query nor a store read. The cache is bounded by the total size of
+ * the cached content, and content can be held off-heap in direct buffers to keep it out of the collected heap.
+ * <p>
+ * Eviction is least recently used with a frequency based admission filter: a file only displaces cached files
+ * that were requested less often than itself, as estimated by a small count-min sketch that is halved
+ * periodically so old popularity fades. A burst of one-off downloads therefore can't flush the covers and
+ * avatars that are requested all the time.
+ * <p>
+ * Lookups take no lock: entries live in a concurrent map, recency is a timestamp on the entry and the sketch
+ * counts in atomic counters. Only admission, eviction and invalidation, which change the cached bytes, are
+ * serialised.
+ */
+@Component
+public class FileContentCache {
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Object admissionLock = new Object();
+    private volatile long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public FileContentCache(@Value("${app.files.cache.max-bytes:67108864}") long maxBytes,
+                            @Value("${app.files.cache.max-entry-bytes:1048576}") long maxEntryBytes,
+                            @Value("${app.files.cache.off-heap:false}") boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Looks up a file being served, counting the request towards its frequency and the hit/miss metrics.
+     */
+    public Entry get(String fileId) {
+        sketch.increment(fileId);
+        Entry entry = entries.get(fileId);
+        if (entry != null) {
+            entry.lastAccess = System.nanoTime();
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Records a request for a file that is served without going through the cache, counting it towards the
+     * file's frequency and as a miss.
+     */
+    public void recordMiss(String fileId) {
+        sketch.increment(fileId);
+        misses.increment();
+    }
+
+    /**
+     * Looks up a file without affecting its recency, frequency or the metrics.
+     */
+    public Entry peek(String fileId) {
+        return entries.get(fileId);
+    }
+
+    /**
+     * Tells whether content of the given stored size would be admitted, so callers only load content that is
+     * going to be cached.
+     */
+    public boolean shouldAdmit(String fileId, long size) {
+        if (size > maxEntryBytes) return false;
+        synchronized (admissionLock) {
+            return victimsFor(fileId, size) != null;
+        }
+    }
+
+    /**
+     * Caches the content if it is admitted.
+     *
+     * @return the cached entry, or {@code null} when the content was not admitted
+     */
+    public Entry put(FileData fileData, byte[] content) {
+        String fileId = fileData.getFileId();
+        synchronized (admissionLock) {
+            Entry existing = entries.get(fileId);
+            if (existing != null) return existing;
+
+            List<Entry> victims = content.length <= maxEntryBytes ? victimsFor(fileId, content.length) : null;
+            if (victims == null) {
+                rejections.increment();
+                return null;
+            }
+            for (Entry victim : victims) {
+                remove(victim.getFileData().getFileId());
+                evictions.increment();
+            }
+
+            ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(content.length) : ByteBuffer.allocate(content.length);
+            buffer.put(content).flip();
+            Entry entry = new Entry(fileData, buffer.asReadOnlyBuffer());
+            entries.put(fileId, entry);
+            usedBytes += content.length;
+            return entry;
+        }
+    }
+
+    public void invalidate(String fileId) {
+        synchronized (admissionLock) {
+            remove(fileId);
+        }
+    }
+
+    /**
+     * Drops every file stored under the storage key, whose cached metadata no longer says where the content is
+     * once it has been moved to another store.
+     */
+    public void invalidateStorageKey(String storageKey) {
+        synchronized (admissionLock) {
+            for (Entry entry : List.copyOf(entries.values())) {
+                if (storageKey.equals(entry.getFileData().resolveStorageKey())) remove(entry.getFileData().getFileId());
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(), entries.size(), usedBytes, maxBytes, offHeap);
+    }
+
+    private void remove(String fileId) {
+        Entry entry = entries.remove(fileId);
+        if (entry != null) usedBytes -= entry.getSize();
+    }
+
+    /**
+     * Returns the least recently used entries to evict to make room for the candidate, or {@code null} when
+     * one of them is used at least as often as the candidate.
+     */
+    private List<Entry> victimsFor(String fileId, long size) {
+        if (usedBytes + size <= maxBytes) return List.of();
+        // the access times are read once, they keep changing under concurrent lookups while sorting
+        List<Map.Entry<Long, Entry>> byRecency = entries.values().stream()
+                .map(entry -> Map.entry(entry.lastAccess, entry))
+                .sorted(Map.Entry.comparingByKey())
+                .collect(Collectors.toList());
+        List<Entry> victims = new ArrayList<>();
+        int candidateFrequency = sketch.frequency(fileId);
+        long freed = 0;
+        Iterator<Map.Entry<Long, Entry>> iterator = byRecency.iterator();
+        while (usedBytes - freed + size > maxBytes) {
+            if (!iterator.hasNext()) return null;
+            Entry victim = iterator.next().getValue();
+            if (sketch.frequency(victim.getFileData().getFileId()) >= candidateFrequency) return null;
+            victims.add(victim);
+            freed += victim.getSize();
+        }
+        return victims;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entry {
+        private final FileData fileData;
+        private final ByteBuffer content;
+        private volatile long lastAccess = System.nanoTime();
+
+        public int getSize() {
+            return content.capacity();
+        }
+
+        /**
+         * Opens a stream over the cached content starting at the given offset.
+         */
+        public InputStream openStream(long offset) {
+            ByteBuffer view = content.duplicate();
+            view.position((int) Math.min(offset, view.limit()));
+            return new ByteBufferInputStream(view);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long rejections;
+        private final int entries;
+        private final long usedBytes;
+        private final long maxBytes;
+        private final boolean offHeap;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each file was requested recently. All counters
+     * are halved after every {@code 10 * WIDTH} requests. Counters are updated without a lock; a count lost
+     * or added twice by concurrent requests only blurs an estimate.
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int WIDTH = 4096;
+        private static final int MAX_COUNT = 15;
+        private static final int RESET_AFTER = 10 * WIDTH;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final AtomicIntegerArray counters = new AtomicIntegerArray(DEPTH * WIDTH);
+        private final AtomicInteger additions = new AtomicInteger();
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (counters.get(index) < MAX_COUNT) counters.incrementAndGet(index);
+            }
+            // exactly one request reaches the threshold
+            if (additions.incrementAndGet() == RESET_AFTER) reset();
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters.get(indexOf(hash, i)));
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return row * WIDTH + (h & (WIDTH - 1));
+        }
+
+        private void reset() {
+            for (int i = 0; i < counters.length(); i++) {
+                counters.getAndUpdate(i, count -> count >> 1);
+            }
+            additions.addAndGet(-RESET_AFTER / 2);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.FileData;
+import com.thullo.data.repository.FilesRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Moves the content of existing files into the configured default {@link FileStore}, or into the store of
+ * their size tier when tiering is enabled, while the application keeps serving them. Every run migrates at most
+ * {@code app.storage.migration.batch-size} files, and runs are spaced {@code app.storage.migration.delay-ms}
+ * apart so the migration never saturates the database.
+ * <p>
+ * A file is copied to the target store before its metadata is switched over, and only then removed from the
+ * source store, so reads keep working at every step. Cached copies of a moved file are dropped, since their
+ * metadata still points at the source store.
+ */
+@Slf4j
+@Component
+public class FileStorageMigrator {
+    private final FilesRepository filesRepository;
+    private final FileStoreResolver fileStoreResolver;
+    private final FileBlobRegistry fileBlobRegistry;
+    private final FileContentCache fileContentCache;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private Long lastMigratedId = 0L;
+
+    public FileStorageMigrator(FilesRepository filesRepository, FileStoreResolver fileStoreResolver,
+                               FileBlobRegistry fileBlobRegistry, FileContentCache fileContentCache,
+                               @Value("${app.storage.migration.enabled:false}") boolean enabled,
+                               @Value("${app.storage.migration.batch-size:20}") int batchSize) {
+        this.filesRepository = filesRepository;
+        this.fileStoreResolver = fileStoreResolver;
+        this.fileBlobRegistry = fileBlobRegistry;
+        this.fileContentCache = fileContentCache;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.migration.delay-ms:60000}")
+    public void migrateBatch() {
+        if (!enabled) return;
+
+        PageRequest page = PageRequest.of(0, batchSize);
+        List<Long> ids = fileStoreResolver.isTiered()
+                ? filesRepository.findIdsOutsideTier(fileStoreResolver.getSmallMaxBytes(), fileStoreResolver.getSmallStorageType(),
+                        fileStoreResolver.getLargeStorageType(), lastMigratedId, page)
+                : filesRepository.findIdsNotStoredIn(fileStoreResolver.getDefaultStore().getStorageType(), lastMigratedId, page);
+        if (ids.isEmpty()) {
+            // start over so files that failed earlier are retried on the next run
+            lastMigratedId = 0L;
+            return;
+        }
+
+        int migrated = 0;
+        for (Long id : ids) {
+            try {
+                if (migrate(id)) migrated++;
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Failed to migrate file {}", id, ex);
+            }
+            lastMigratedId = id;
+        }
+        log.info("Migrated {} of {} files", migrated, ids.size());
+    }
+
+    private boolean migrate(Long id) throws IOException {
+        FileData fileData = filesRepository.findById(id).orElse(null);
+        if (fileData == null) return false;
+
+        FileStore source = fileStoreResolver.getStore(fileData);
+        Path spoolFile = Files.createTempFile("thullo-migrate-", ".tmp");
+        try {
+            source.read(fileData.resolveStorageKey(), content -> Files.copy(content, spoolFile, StandardCopyOption.REPLACE_EXISTING));
+            FileStore target = fileStoreResolver.getStoreFor(Files.size(spoolFile));
+            // content stored inline before its size was recorded may already be in the store of its tier
+            if (target.getStorageType() == fileData.getStorageType()) return false;
+            fileBlobRegistry.relocate(fileData, target, spoolFile);
+            fileContentCache.invalidateStorageKey(fileData.resolveStorageKey());
+            return true;
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+}
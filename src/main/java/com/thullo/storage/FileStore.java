@@ -0,0 +1,46 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.StorageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Backend that keeps the (compressed) content of uploaded files. {@link com.thullo.data.model.FileData}
+ * only records the metadata of a file together with the key and type of the store holding its content.
+ */
+public interface FileStore {
+    StorageType getStorageType();
+
+    /**
+     * Stores the content of the given file under the storage key, replacing any content already stored under it.
+     *
+     * @param storageKey the key the content is stored under
+     * @param source     a local file holding the content to store
+     */
+    void write(String storageKey, Path source) throws IOException;
+
+    /**
+     * Opens the content stored under the storage key and hands it to the reader. The stream is only
+     * valid while the reader runs and is closed afterwards.
+     *
+     * @throws java.io.FileNotFoundException when nothing is stored under the key
+     */
+    void read(String storageKey, ContentReader reader) throws IOException;
+
+    /**
+     * Like {@link #read(String, ContentReader)}, but the stream handed to the reader starts at the given
+     * offset. Stores seek to the offset instead of reading and discarding the bytes before it.
+     */
+    void read(String storageKey, long offset, ContentReader reader) throws IOException;
+
+    void delete(String storageKey) throws IOException;
+
+    /**
+     * Returns the local file holding the content stored under the key, so it can be sent to clients without
+     * being copied through the JVM. Stores that don't keep content on the local disk return {@code null}.
+     */
+    default Path getLocalPath(String storageKey) {
+        return null;
+    }
+}
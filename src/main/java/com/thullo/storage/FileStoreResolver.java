@@ -0,0 +1,76 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.StorageType;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@link FileStore} new uploads are written to, configured through {@code app.storage.type},
+ * and the store holding the content of an existing file.
+ * <p>
+ * With {@code app.storage.tiering.enabled} the store of new content is chosen by its stored size instead:
+ * content up to {@code app.storage.tiering.small-max-bytes} goes to the {@code small-type} store, where small
+ * files such as cover images are kept transactionally with their metadata, and larger content to the
+ * {@code large-type} store. The {@link FileStorageMigrator} moves existing content between the tiers.
+ */
+@Component
+public class FileStoreResolver {
+    private final Map<StorageType, FileStore> stores = new EnumMap<>(StorageType.class);
+    private final StorageType defaultStorageType;
+    @Getter
+    private final boolean tiered;
+    @Getter
+    private final long smallMaxBytes;
+    @Getter
+    private final StorageType smallStorageType;
+    @Getter
+    private final StorageType largeStorageType;
+
+    public FileStoreResolver(List<FileStore> fileStores, @Value("${app.storage.type:database}") String storageType,
+                             @Value("${app.storage.tiering.enabled:false}") boolean tiered,
+                             @Value("${app.storage.tiering.small-max-bytes:262144}") long smallMaxBytes,
+                             @Value("${app.storage.tiering.small-type:database}") String smallStorageType,
+                             @Value("${app.storage.tiering.large-type:filesystem}") String largeStorageType) {
+        fileStores.forEach(store -> stores.put(store.getStorageType(), store));
+        this.defaultStorageType = getAvailableType(storageType);
+        this.tiered = tiered;
+        this.smallMaxBytes = smallMaxBytes;
+        this.smallStorageType = tiered ? getAvailableType(smallStorageType) : defaultStorageType;
+        this.largeStorageType = tiered ? getAvailableType(largeStorageType) : defaultStorageType;
+    }
+
+    private StorageType getAvailableType(String storageType) {
+        StorageType type = StorageType.valueOf(storageType.trim().toUpperCase());
+        if (!stores.containsKey(type)) {
+            throw new IllegalStateException("No file store available for storage type " + storageType);
+        }
+        return type;
+    }
+
+    public FileStore getDefaultStore() {
+        return stores.get(defaultStorageType);
+    }
+
+    /**
+     * Returns the store new content of the given stored size is written to, the default store unless
+     * tiering is enabled.
+     */
+    public FileStore getStoreFor(long storedSize) {
+        if (!tiered) return getDefaultStore();
+        return stores.get(storedSize <= smallMaxBytes ? smallStorageType : largeStorageType);
+    }
+
+    public FileStore getStore(StorageType storageType) {
+        return stores.get(storageType);
+    }
+
+    public FileStore getStore(FileData fileData) {
+        return getStore(fileData.resolveStorageType());
+    }
+}
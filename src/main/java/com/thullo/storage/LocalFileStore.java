@@ -0,0 +1,99 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.StorageType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps file content on the local disk below {@code app.storage.local.root-dir}. Files are sharded into
+ * two levels of directories named after the first characters of the storage key so no single directory
+ * grows unbounded, e.g. {@code 3f/a2/3fa2...}. Writes go to a temporary file in the target directory that
+ * is renamed into place once it is fully written, so readers never see partially written content.
+ */
+@Slf4j
+@Component
+public class LocalFileStore implements FileStore {
+    private static final Pattern STORAGE_KEY_PATTERN = Pattern.compile("[A-Za-z0-9_-]{4,}");
+
+    private final Path rootDirectory;
+
+    public LocalFileStore(@Value("${app.storage.local.root-dir:./data/files}") String rootDirectory) {
+        this.rootDirectory = Paths.get(rootDirectory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public StorageType getStorageType() {
+        return StorageType.FILESYSTEM;
+    }
+
+    @Override
+    public void write(String storageKey, Path source) throws IOException {
+        Path target = resolve(storageKey);
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), storageKey, ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public void read(String storageKey, ContentReader reader) throws IOException {
+        read(storageKey, 0, reader);
+    }
+
+    @Override
+    public void read(String storageKey, long offset, ContentReader reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(storageKey), StandardOpenOption.READ)) {
+            channel.position(offset);
+            reader.read(Channels.newInputStream(channel));
+        } catch (NoSuchFileException ex) {
+            throw new FileNotFoundException(format("No content stored under key %s", storageKey));
+        }
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        Files.deleteIfExists(resolve(storageKey));
+    }
+
+    @Override
+    public Path getLocalPath(String storageKey) {
+        Path path = resolve(storageKey);
+        return Files.exists(path) ? path : null;
+    }
+
+    Path resolve(String storageKey) {
+        if (storageKey == null || !STORAGE_KEY_PATTERN.matcher(storageKey).matches()) {
+            throw new IllegalArgumentException(format("Invalid storage key %s", storageKey));
+        }
+        return rootDirectory.resolve(storageKey.substring(0, 2))
+                .resolve(storageKey.substring(2, 4))
+                .resolve(storageKey);
+    }
+}
@@ -0,0 +1,242 @@
+package com.thullo.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Materialises file content from stores that don't keep it on the local disk into
+ * {@code app.files.serving-cache.dir}, so the container can send it to clients with its zero-copy sendfile
+ * support instead of it being copied through the JVM on every request. Content is kept per storage key and variant, the content coding
+ * of the bytes, and since stored content never changes under its key a cached file never goes stale.
+ * <p>
+ * The cache is bounded by {@code app.files.serving-cache.max-bytes} and evicts the least recently served
+ * files. A file returned by {@link #get} is held until the caller {@link #release releases} it once sent, and a
+ * held file is never evicted. Files released within the last {@link #EVICTION_GRACE_MILLIS} ms are spared too,
+ * since the container opens a file handed to its sendfile support only after the request has completed.
+ * Files already cached on disk are picked up again after a restart.
+ */
+@Slf4j
+@Component
+public class ServingFileCache {
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]{4,}\\.[a-z]+");
+    private static final long EVICTION_GRACE_MILLIS = 1_000;
+    private static final long MAX_MAPPED_REGION = 64L << 20;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public ServingFileCache(@Value("${app.files.serving-cache.enabled:false}") boolean enabled,
+                            @Value("${app.files.serving-cache.dir:./data/serving}") String directory,
+                            @Value("${app.files.serving-cache.max-bytes:1073741824}") long maxBytes) throws IOException {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        if (enabled) loadExisting();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached file holding the content of the storage key in the given variant, writing it with
+     * the loader first when it is not cached yet. The file is held for the caller until it is released.
+     */
+    public Path get(String storageKey, String variant, Loader loader) throws IOException {
+        String name = storageKey + "." + variant;
+        if (!NAME_PATTERN.matcher(name).matches()) throw new IllegalArgumentException(String.format("Invalid serving file name %s", name));
+
+        // held under the lock of the key, so eviction can't remove the entry in between
+        Entry entry = entries.computeIfPresent(name, (key, cached) -> {
+            cached.inUse.incrementAndGet();
+            return cached;
+        });
+        if (entry != null) {
+            if (Files.exists(entry.path)) {
+                entry.lastAccess = System.currentTimeMillis();
+                return entry.path;
+            }
+            entry.inUse.decrementAndGet();
+        }
+
+        Path target = directory.resolve(name);
+        Path tempFile = Files.createTempFile(directory, name, ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                loader.write(os);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        add(name, target, Files.size(target), true);
+        evictIfNeeded();
+        return target;
+    }
+
+    /**
+     * Releases a file returned by {@link #get} once it has been sent. Paths outside the cache are ignored, so
+     * any serving file can be released.
+     */
+    public void release(Path path) {
+        if (path == null || !directory.equals(path.getParent())) return;
+        Entry entry = entries.get(path.getFileName().toString());
+        if (entry == null) return;
+        entry.lastAccess = System.currentTimeMillis();
+        if (entry.inUse.decrementAndGet() < 0) entry.inUse.incrementAndGet();
+    }
+
+    /**
+     * Drops every cached variant of the storage key.
+     */
+    public void invalidate(String storageKey) {
+        if (!enabled) return;
+        for (String name : List.copyOf(entries.keySet())) {
+            if (name.startsWith(storageKey + ".")) remove(name);
+        }
+    }
+
+    /**
+     * Sends {@code length} bytes of the file starting at {@code start} to the stream. This is the fallback for
+     * containers without sendfile support and for multipart ranges: the servlet output stream is no channel the
+     * kernel can write to, so the bytes are copied through the JVM either way. Whole files go through
+     * {@link FileChannel#transferTo}, ranges are written from memory mapped regions of the file, which saves the
+     * read into a buffer of its own.
+     */
+    public static void transfer(Path path, long start, long length, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = start;
+            long end = start + length;
+            if (start == 0 && length == channel.size()) {
+                while (position < end) {
+                    long transferred = channel.transferTo(position, end - position, target);
+                    if (transferred <= 0) break;
+                    position += transferred;
+                }
+                return;
+            }
+            while (position < end) {
+                long size = Math.min(MAX_MAPPED_REGION, end - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                while (region.hasRemaining()) target.write(region);
+                position += size;
+            }
+        }
+    }
+
+    /**
+     * Adds the file, held once for the caller when {@code held}. A file written again while the old one is still
+     * being sent stays held by its senders.
+     */
+    private void add(String name, Path path, long size, boolean held) {
+        entries.compute(name, (key, previous) -> {
+            Entry entry = new Entry(path, size, previous != null ? previous.inUse : new AtomicInteger());
+            if (held) entry.inUse.incrementAndGet();
+            usedBytes.addAndGet(previous != null ? size - previous.size : size);
+            return entry;
+        });
+    }
+
+    private void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) return;
+        usedBytes.addAndGet(-entry.size);
+        delete(entry.path);
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Failed to delete serving file {}", path, ex);
+        }
+    }
+
+    private synchronized void evictIfNeeded() {
+        if (usedBytes.get() <= maxBytes) return;
+        long graceStart = System.currentTimeMillis() - EVICTION_GRACE_MILLIS;
+        List<Map.Entry<String, Entry>> candidates = entries.entrySet().stream()
+                .filter(candidate -> candidate.getValue().inUse.get() == 0 && candidate.getValue().lastAccess < graceStart)
+                .sorted(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess))
+                .collect(Collectors.toList());
+        for (Map.Entry<String, Entry> candidate : candidates) {
+            if (usedBytes.get() <= maxBytes) break;
+            evict(candidate.getKey());
+        }
+    }
+
+    /**
+     * Removes the file unless a request has taken it since the candidates were listed.
+     */
+    private void evict(String name) {
+        Entry[] evicted = new Entry[1];
+        entries.computeIfPresent(name, (key, entry) -> {
+            if (entry.inUse.get() > 0) return entry;
+            evicted[0] = entry;
+            return null;
+        });
+        if (evicted[0] == null) return;
+        usedBytes.addAndGet(-evicted[0].size);
+        delete(evicted[0].path);
+    }
+
+    private void loadExisting() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (NAME_PATTERN.matcher(name).matches()) {
+                    add(name, file, Files.size(file), false);
+                } else {
+                    // temporary file left behind by a materialisation that never finished
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        log.info("Serving cache holds {} files, {} bytes", entries.size(), usedBytes.get());
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final long size;
+        private final AtomicInteger inUse;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(Path path, long size, AtomicInteger inUse) {
+            this.path = path;
+            this.size = size;
+            this.inUse = inUse;
+        }
+    }
+}
@@ -24,8 +24,71 @@ public class Helper {
         return String.format("%.2f %s", size / Math.pow(1024, digitGroups), units[digitGroups]);
     }
 
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the ETag of a response at the given version. It is weak since the bytes of the response differ
+     * between requests, by their timestamp and encoding.
+     */
+    public static String versionETag(long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    /**
+     * Whether the {@code Accept-Encoding} header accepts the content coding. The quality of the coding itself
+     * takes precedence over that of {@code *}, so {@code gzip;q=0, *} refuses gzip, and a coding given a
+     * quality of 0 or none that can be read is refused.
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String contentEncoding) {
+        if (acceptEncoding == null) return false;
+        Double quality = null;
+        Double wildcardQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase(contentEncoding)) quality = quality(parts);
+            else if (name.equals("*")) wildcardQuality = quality(parts);
+        }
+        if (quality == null) quality = wildcardQuality;
+        return quality != null && quality > 0;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the id of the file served at the url, or {@code null} when the url is not the url of a stored file,
+     * such as the image of a user given by an OAuth2 provider.
+     */
+    public static String fileIdOf(String url) {
+        return url != null && url.contains("files/") ? extractFileIdFromUrl(url) : null;
+    }
+
+    /**
+     * Returns the id of the file served at a url built by {@link com.thullo.service.FileService}, which ends with
+     * {@code files/<fileId>.<fileType>}. The extension is not part of the id, file ids never contain a dot.
+     */
     public static String extractFileIdFromUrl(String imageUrl) {
-        return imageUrl.substring(imageUrl.indexOf("files/") + 6);
+        String fileName = imageUrl.substring(imageUrl.indexOf("files/") + 6);
+        return fileName.contains(".") ? fileName.substring(0, fileName.indexOf(".")) : fileName;
     }
 
 }
@@ -0,0 +1,69 @@
+package com.thullo.web.controller;
+
+import com.thullo.security.UploadAdmissionControl;
+import com.thullo.service.BoardEventHub;
+import com.thullo.service.OrphanFileCollector;
+import com.thullo.service.StorageUsageService;
+import com.thullo.storage.FileContentCache;
+import com.thullo.web.payload.response.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/thullo/admin")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+    private final FileContentCache fileContentCache;
+    private final OrphanFileCollector orphanFileCollector;
+    private final UploadAdmissionControl uploadAdmissionControl;
+    private final StorageUsageService storageUsageService;
+    private final BoardEventHub boardEventHub;
+
+    @GetMapping("/file-cache")
+    public ResponseEntity<ApiResponse> getFileCacheStats() {
+        return ResponseEntity.ok(new ApiResponse(true, "File cache stats fetched successfully", fileContentCache.getStats()));
+    }
+
+    /**
+     * Reports how much of the budget for uploads received at the same time is in use, and how many uploads had
+     * to wait for it or were rejected.
+     */
+    @GetMapping("/upload-admission")
+    public ResponseEntity<ApiResponse> getUploadAdmissionStats() {
+        return ResponseEntity.ok(new ApiResponse(true, "Upload admission stats fetched successfully", uploadAdmissionControl.getStats()));
+    }
+
+    /**
+     * Recomputes the storage usage counters of all boards and users from their attachments.
+     */
+    @PostMapping("/storage-usage/rebuild")
+    public ResponseEntity<ApiResponse> rebuildStorageUsage() {
+        long counted = storageUsageService.rebuild();
+        return ResponseEntity.ok(new ApiResponse(true, "Storage usage rebuilt successfully", Map.of("attachments", counted)));
+    }
+
+    /**
+     * Reports the connections streaming board events on this node, and how many slow clients were disconnected.
+     */
+    @GetMapping("/board-events")
+    public ResponseEntity<ApiResponse> getBoardEventStats() {
+        return ResponseEntity.ok(new ApiResponse(true, "Board event stats fetched successfully", boardEventHub.getStats()));
+    }
+
+    @GetMapping("/file-gc")
+    public ResponseEntity<ApiResponse> getOrphanCollectionReport() {
+        Map<String, OrphanFileCollector.Report> reports = new LinkedHashMap<>();
+        reports.put("currentPass", orphanFileCollector.getCurrentPass());
+        reports.put("lastPass", orphanFileCollector.getLastPass());
+        return ResponseEntity.ok(new ApiResponse(true, "Orphaned file collection report fetched successfully", reports));
+    }
+}
@@ -1,8 +1,14 @@
 package com.thullo.web.controller;
 
 import com.thullo.annotation.CurrentUser;
+import com.thullo.data.model.Attachment;
 import com.thullo.security.UserPrincipal;
+import com.thullo.service.BoardChangeService;
+import com.thullo.service.BoardEventHub;
 import com.thullo.service.BoardService;
+import com.thullo.service.BoardViewStore;
+import com.thullo.service.FileService;
+import com.thullo.service.StorageUsageService;
 import com.thullo.web.exception.BadRequestException;
 import com.thullo.web.exception.UserException;
 import com.thullo.web.payload.request.BoardRequest;
@@ -10,23 +16,39 @@ import com.thullo.web.payload.response.ApiResponse;
 import com.thullo.web.payload.response.BoardResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.thullo.util.Helper.acceptsEncoding;
+import static com.thullo.util.Helper.versionETag;
+
 @RestController
 @Slf4j
 @RequestMapping("api/v1/thullo/boards")
 @RequiredArgsConstructor
 public class BoardController {
     private final BoardService boardService;
+    private final FileService fileService;
+    private final StorageUsageService storageUsageService;
+    private final BoardViewStore boardViewStore;
+    private final BoardChangeService boardChangeService;
+    private final BoardEventHub boardEventHub;
     @PostMapping
     public ResponseEntity<ApiResponse> createBoard(@RequestParam(value = "file", required = false) MultipartFile file, @RequestParam("boardName") String boardName,
                                                    @CurrentUser UserPrincipal principal, HttpServletRequest request) {
@@ -42,10 +64,92 @@ public class BoardController {
 
     @GetMapping("/{boardTag}")
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
-    public ResponseEntity<ApiResponse> getABoard(@PathVariable String boardTag) {
+    public ResponseEntity<?> getABoard(@PathVariable String boardTag,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                       WebRequest webRequest) {
         try {
-            return ResponseEntity.ok(new ApiResponse(true, "Board successfully fetched",
-                    boardService.getBoard(boardTag)));
+            Long version = boardChangeService.getBoardVersion(boardTag);
+            if (version == null) throw new BadRequestException("Board not found");
+            if (webRequest.checkNotModified(versionETag(version))) return null;
+
+            BoardViewStore.RenderedBoard board = boardViewStore.getBoard(boardTag, version, () ->
+                    new ApiResponse(true, "Board successfully fetched", boardService.getBoard(boardTag)));
+            boolean gzip = acceptsEncoding(acceptEncoding, "gzip");
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            headers.setETag(versionETag(version));
+            if (gzip) headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).body(gzip ? board.getGzip() : board.getJson());
+        } catch (BadRequestException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage(),
+                    new HashMap<>(Map.of("message", ex.getMessage()))));
+        }
+    }
+
+    /**
+     * Returns the changes of the board after version {@code since}, for clients keeping a copy of the board, or
+     * asks them to fetch the board again when the changes are no longer all logged.
+     */
+    @GetMapping("/{boardTag}/changes")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
+    public ResponseEntity<ApiResponse> getBoardChanges(@PathVariable String boardTag, @RequestParam("since") long since) {
+        try {
+            return ResponseEntity.ok(new ApiResponse(true, "Board changes successfully fetched",
+                    boardChangeService.getChanges(boardTag, since)));
+        } catch (BadRequestException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    /**
+     * Streams the changes of the board as server-sent events, starting with the current version of the board.
+     * A client reconnecting fetches the changes it missed from {@code /changes} with the id of its last event.
+     */
+    @GetMapping("/{boardTag}/events")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
+    public ResponseEntity<?> streamBoardEvents(@PathVariable String boardTag, @CurrentUser UserPrincipal principal) {
+        if (boardChangeService.getBoardVersion(boardTag) == null) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ApiResponse(false, "Board not found"));
+        }
+        SseEmitter emitter = boardEventHub.subscribe(boardTag, principal.getEmail(),
+                () -> boardChangeService.getBoardVersion(boardTag));
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ApiResponse(false, "Too many open board streams, try again later"));
+        }
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    @GetMapping("/{boardTag}/storage-usage")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
+    public ResponseEntity<ApiResponse> getBoardStorageUsage(@PathVariable String boardTag) {
+        return ResponseEntity.ok(new ApiResponse(true, "Storage usage fetched successfully",
+                storageUsageService.getBoardUsage(boardTag)));
+    }
+
+    /**
+     * Reports the storage used by all files uploaded by the current user.
+     */
+    @GetMapping("/storage-usage")
+    public ResponseEntity<ApiResponse> getUserStorageUsage(@CurrentUser UserPrincipal principal) {
+        return ResponseEntity.ok(new ApiResponse(true, "Storage usage fetched successfully",
+                storageUsageService.getUserUsage(principal.getEmail())));
+    }
+
+    @GetMapping("/{boardTag}/attachments/archive")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
+    public ResponseEntity<?> downloadAttachments(@PathVariable String boardTag) {
+        try {
+            List<Attachment> attachments = boardService.getAttachments(boardTag);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDisposition(ContentDisposition.attachment().filename(boardTag + "-attachments.zip").build());
+            StreamingResponseBody body = outputStream -> fileService.writeAttachmentArchive(attachments, true, outputStream);
+            return ResponseEntity.ok().headers(headers).body(body);
         } catch (BadRequestException ex) {
             return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage(),
                     new HashMap<>(Map.of("message", ex.getMessage()))));
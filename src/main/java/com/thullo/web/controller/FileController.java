@@ -1,70 +1,435 @@
 package com.thullo.web.controller;
 
+import com.thullo.annotation.CurrentUser;
+import com.thullo.data.model.ContentCodec;
 import com.thullo.data.model.FileData;
+import com.thullo.security.UserPrincipal;
 import com.thullo.service.FileService;
+import com.thullo.service.StorageUsageService;
+import com.thullo.service.ThumbnailService;
+import com.thullo.service.UploadIngestor;
+import com.thullo.storage.ServingFileCache;
+import com.thullo.web.exception.UploadRejectedException;
+import com.thullo.web.payload.request.FileOfferRequest;
 import com.thullo.web.payload.response.ApiResponse;
-import lombok.RequiredArgsConstructor;
+import com.thullo.web.payload.response.FileOfferChallengeResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.ByteArrayInputStream;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.thullo.util.Helper.acceptsEncoding;
 
 
 @RestController
-@RequiredArgsConstructor
 @RequestMapping("api/v1/thullo/files")
 @Slf4j
 public class FileController {
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+    private static final String SERVING_FILE_INTERCEPTOR = FileController.class.getName() + ".servingFile";
+
     private final FileService fileService;
+    private final ThumbnailService thumbnailService;
+    private final StorageUsageService storageUsageService;
+    private final ServingFileCache servingFileCache;
+    private final long cacheMaxAge;
+    private final long processingRetryAfter;
+
+    public FileController(FileService fileService, ThumbnailService thumbnailService,
+                          StorageUsageService storageUsageService, ServingFileCache servingFileCache,
+                          @Value("${app.files.cache-max-age:31536000}") long cacheMaxAge,
+                          @Value("${app.upload.async.retry-after-seconds:5}") long processingRetryAfter) {
+        this.fileService = fileService;
+        this.thumbnailService = thumbnailService;
+        this.storageUsageService = storageUsageService;
+        this.servingFileCache = servingFileCache;
+        this.cacheMaxAge = cacheMaxAge;
+        this.processingRetryAfter = processingRetryAfter;
+    }
 
     @GetMapping("/{fileId}")
-    public ResponseEntity<?> getFile(@PathVariable("fileId") String fileId, @RequestParam(required = false, defaultValue = "false") boolean asAttachment) {
+    public ResponseEntity<?> getFile(@PathVariable("fileId") String fileId, @RequestParam(required = false, defaultValue = "false") boolean asAttachment,
+                                     @RequestParam(required = false) Integer size, WebRequest request) {
         try {
-            FileData file = fileService.getFile(fileId.contains(".") ? fileId.substring(0, fileId.lastIndexOf(".")) : fileId);
-            byte[] fileContent = file.getFileByte();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(fileService.getMediaTypeForFileType(file.getFileType()));
-            headers.setContentLength(fileContent.length);
-            headers.setContentDisposition(ContentDisposition.builder(asAttachment ? "attachment" : "inline").filename(file.getFileName()).build());
-            InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(fileContent));
-            return ResponseEntity.ok().headers(headers).body(resource);
+            String id = fileId.contains(".") ? fileId.substring(0, fileId.lastIndexOf(".")) : fileId;
+            if (size == null) return streamFile(id, asAttachment, true, request);
+            String thumbnailId = thumbnailService.findThumbnail(id, size);
+            // until the thumbnail is generated the original is served without letting clients cache it
+            return thumbnailId != null ? streamFile(thumbnailId, asAttachment, true, request) : streamFile(id, asAttachment, false, request);
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body(new ApiResponse(false, "File not found"));
+            return fileNotFound(fileId);
         }
     }
 
+    /**
+     * Reports whether an uploaded file is still being stored in the background, is ready or failed to store.
+     */
+    @GetMapping("/{fileId}/status")
+    public ResponseEntity<ApiResponse> getFileStatus(@PathVariable("fileId") String fileId) {
+        String id = fileId.contains(".") ? fileId.substring(0, fileId.lastIndexOf(".")) : fileId;
+        UploadIngestor.Status status = fileService.getUploadStatus(id);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiResponse(false, "File not found"));
+        }
+        return ResponseEntity.ok(new ApiResponse(true, "File status fetched successfully", Map.of("status", status)));
+    }
+
 
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<?> downloadFile(@PathVariable("fileId") String fileId) {
+    public ResponseEntity<?> downloadFile(@PathVariable("fileId") String fileId, WebRequest request) {
         try {
-            FileData files = fileService.getFile(fileId);
-            ByteArrayResource resource = new ByteArrayResource(files.getFileByte());
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + files.getFileName());
-            headers.setContentType(fileService.getMediaTypeForFileType(files.getFileType()));
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(resource);
+            return streamFile(fileId, true, true, request);
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body(new ApiResponse(false, "File not found"));
+            return fileNotFound(fileId);
+        }
+    }
+
+    /**
+     * Answers a request for a file that couldn't be served. A file whose upload is still being stored in the
+     * background gets a 503 with a {@code Retry-After}, as it will be served shortly.
+     */
+    private ResponseEntity<ApiResponse> fileNotFound(String fileId) {
+        String id = fileId.contains(".") ? fileId.substring(0, fileId.lastIndexOf(".")) : fileId;
+        if (fileService.getUploadStatus(id) == UploadIngestor.Status.PROCESSING) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(processingRetryAfter))
+                    .body(new ApiResponse(false, "File is being processed"));
+        }
+        return ResponseEntity.badRequest().body(new ApiResponse(false, "File not found"));
+    }
+
+    /**
+     * Builds a response whose body is streamed from the store to the client after the handler
+     * returns, so the file content is never buffered in memory as a whole. {@code Range} requests
+     * are answered with 206 and only the requested part(s) of the file. Clients accepting the codec the
+     * file is stored with get the stored content as-is with a matching {@code Content-Encoding}.
+     * <p>
+     * File ids are never reused and a file is never modified in place, so responses are marked as
+     * immutable and conditional requests are answered with 304 from the metadata alone, except when
+     * {@code immutable} is false because the url will serve a different file later.
+     */
+    private ResponseEntity<StreamingResponseBody> streamFile(String fileId, boolean asAttachment, boolean immutable,
+                                                             WebRequest request) throws IOException {
+        FileData file = fileService.getFile(fileId);
+        String contentHash = file.getContentHash();
+        Instant lastModified = getLastModified(file);
+        Long fileSize = file.getFileSize();
+        ContentCodec codec = file.resolveCodec();
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        List<HttpRange> ranges = rangeHeader != null && fileSize != null
+                && isRangeApplicable(request.getHeader(HttpHeaders.IF_RANGE), eTag(contentHash, ContentCodec.IDENTITY), lastModified)
+                ? parseRanges(rangeHeader, fileSize) : null;
+        boolean rangeRequested = ranges != null;
+        boolean encoded = codec != ContentCodec.IDENTITY && !rangeRequested
+                && acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), codec.getContentEncoding());
+
+        HttpHeaders headers = new HttpHeaders();
+        if (contentHash != null) headers.setETag(eTag(contentHash, encoded ? codec : ContentCodec.IDENTITY));
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(immutable
+                ? CacheControl.maxAge(cacheMaxAge, TimeUnit.SECONDS).cachePublic().getHeaderValue() + ", immutable"
+                : CacheControl.noCache().getHeaderValue());
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (isNotModified(request, contentHash, codec, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        MediaType mediaType = fileService.getMediaTypeForFileType(file.getFileType());
+        headers.setContentType(mediaType);
+        headers.setContentDisposition(ContentDisposition.builder(asAttachment ? "attachment" : "inline").filename(file.getFileName()).build());
+        // files uploaded before the size was recorded can only be served as a whole, and ranges are never
+        // served encoded
+        if (fileSize != null && !encoded) headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (encoded) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, codec.getContentEncoding());
+            Path servingFile = fileService.getServingFile(fileId, true);
+            if (servingFile != null) return sendFile(HttpStatus.OK, headers, servingFile, 0, null, request);
+            if (file.getCompressedSize() != null) headers.setContentLength(file.getCompressedSize());
+            StreamingResponseBody body = outputStream -> fileService.writeEncodedFile(fileId, outputStream);
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+
+        Path servingFile = fileService.getServingFile(fileId, false);
+        if (!rangeRequested) {
+            if (servingFile != null) return sendFile(HttpStatus.OK, headers, servingFile, 0, null, request);
+            if (fileSize != null) headers.setContentLength(fileSize);
+            StreamingResponseBody body = outputStream -> fileService.writeFile(fileId, outputStream);
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+
+        if (ranges.isEmpty()) {
+            servingFileCache.release(servingFile);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                    .build();
+        }
+
+        if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(fileSize);
+            long end = ranges.get(0).getRangeEnd(fileSize);
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(start, end, fileSize));
+            if (servingFile != null) return sendFile(HttpStatus.PARTIAL_CONTENT, headers, servingFile, start, end - start + 1, request);
+            headers.setContentLength(end - start + 1);
+            StreamingResponseBody body = outputStream -> fileService.writeFile(fileId, start, end - start + 1, outputStream);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
         }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        headers.setContentType(new MediaType("multipart", "byteranges", Map.of("boundary", boundary)));
+        StreamingResponseBody body = releasedAfter(servingFile, request, outputStream -> {
+            for (HttpRange range : ranges) {
+                long start = range.getRangeStart(fileSize);
+                long end = range.getRangeEnd(fileSize);
+                String partHeaders = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, fileSize) + "\r\n\r\n";
+                outputStream.write(partHeaders.getBytes(StandardCharsets.US_ASCII));
+                if (servingFile != null) ServingFileCache.transfer(servingFile, start, end - start + 1, outputStream);
+                else fileService.writeFile(fileId, start, end - start + 1, outputStream);
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        });
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+    }
+
+    /**
+     * Sends part of a local file as the body, the whole file when {@code length} is null. When the servlet
+     * container supports it the file is handed to its sendfile support, which writes it from the page cache to
+     * the socket without it ever entering the JVM; otherwise it is copied to the response stream after the
+     * handler returns. The serving file is released once the request has completed or the transfer has ended.
+     */
+    private ResponseEntity<StreamingResponseBody> sendFile(HttpStatus status, HttpHeaders headers, Path path, long start, Long length,
+                                                           WebRequest request) throws IOException {
+        long size;
+        try {
+            size = length != null ? length : Files.size(path);
+        } catch (IOException | RuntimeException ex) {
+            servingFileCache.release(path);
+            throw ex;
+        }
+        headers.setContentLength(size);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, path.toString(), RequestAttributes.SCOPE_REQUEST);
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start, RequestAttributes.SCOPE_REQUEST);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, start + size, RequestAttributes.SCOPE_REQUEST);
+            // the attributes of the handler's WebRequest are never completed, those of the dispatcher are
+            RequestContextHolder.currentRequestAttributes().registerDestructionCallback(SENDFILE_FILENAME_ATTRIBUTE,
+                    () -> servingFileCache.release(path), RequestAttributes.SCOPE_REQUEST);
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+        StreamingResponseBody body = releasedAfter(path, request,
+                outputStream -> ServingFileCache.transfer(path, start, size, outputStream));
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    /**
+     * Releases the serving file once the body has sent it, or once the asynchronous request it is written in
+     * completes, so a body that never runs because the request timed out or failed doesn't hold the file forever.
+     */
+    private StreamingResponseBody releasedAfter(Path servingFile, WebRequest request, StreamingResponseBody body) {
+        if (servingFile == null) return body;
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) servingFileCache.release(servingFile);
+        };
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(SERVING_FILE_INTERCEPTOR,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        release.run();
+                    }
+                });
+        return outputStream -> {
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                release.run();
+            }
+        };
+    }
+
+    /**
+     * Evaluates {@code If-None-Match} or, when absent, {@code If-Modified-Since} against the file.
+     * Tags of both the identity and the encoded representation match.
+     */
+    private boolean isNotModified(WebRequest request, String contentHash, ContentCodec codec, Instant lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (contentHash == null) return false;
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(eTag(contentHash, ContentCodec.IDENTITY)) || tag.equals(eTag(contentHash, codec))) return true;
+            }
+            return false;
+        }
+        Long ifModifiedSince = parseHttpDate(request.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+        return ifModifiedSince != null && lastModified.getEpochSecond() <= ifModifiedSince;
+    }
+
+    private String eTag(String contentHash, ContentCodec encoding) {
+        if (contentHash == null) return null;
+        String suffix = encoding == ContentCodec.IDENTITY ? "" : "-" + encoding.getContentEncoding();
+        return "\"" + contentHash + suffix + "\"";
+    }
+
+    /**
+     * A range request only applies when the {@code If-Range} validator, if any, still matches the file.
+     */
+    private boolean isRangeApplicable(String ifRange, String eTag, Instant lastModified) {
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("W/")) return false;
+        if (ifRange.startsWith("\"")) return ifRange.equals(eTag);
+        Long ifRangeSeconds = parseHttpDate(ifRange);
+        return ifRangeSeconds != null && ifRangeSeconds == lastModified.getEpochSecond();
+    }
+
+    private Long parseHttpDate(String value) {
+        if (value == null) return null;
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private Instant getLastModified(FileData file) {
+        LocalDateTime lastModified = file.getUpdatedAt() != null ? file.getUpdatedAt() : file.getCreatedAt();
+        return lastModified.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    /**
+     * Parses the {@code Range} header into the ranges inside the file, sorted and with overlapping or adjacent
+     * ranges merged. Returns {@code null} when the header is to be ignored and the whole file served, because it
+     * is malformed or its ranges ask for more bytes than the file has together, and an empty list when none of
+     * the ranges lies inside the file.
+     */
+    private List<HttpRange> parseRanges(String rangeHeader, long fileSize) {
+        List<HttpRange> requested;
+        try {
+            requested = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        List<long[]> satisfiable = new ArrayList<>();
+        long requestedBytes = 0;
+        for (HttpRange range : requested) {
+            if (fileSize == 0 || range.getRangeStart(fileSize) >= fileSize) continue;
+            long start = range.getRangeStart(fileSize);
+            long end = range.getRangeEnd(fileSize);
+            requestedBytes += end - start + 1;
+            if (requestedBytes > fileSize) return null;
+            satisfiable.add(new long[]{start, end});
+        }
+        satisfiable.sort(Comparator.comparingLong(range -> range[0]));
+
+        List<HttpRange> ranges = new ArrayList<>();
+        long[] merged = null;
+        for (long[] range : satisfiable) {
+            if (merged != null && range[0] <= merged[1] + 1) {
+                merged[1] = Math.max(merged[1], range[1]);
+                continue;
+            }
+            if (merged != null) ranges.add(HttpRange.createByteRange(merged[0], merged[1]));
+            merged = range;
+        }
+        if (merged != null) ranges.add(HttpRange.createByteRange(merged[0], merged[1]));
+        return ranges;
+    }
+
+    private String contentRange(long start, long end, long fileSize) {
+        return "bytes " + start + "-" + end + "/" + fileSize;
     }
 
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<ApiResponse> uploadFile(@RequestParam("file") MultipartFile file, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse> uploadFile(@RequestParam("file") MultipartFile file, HttpServletRequest request,
+                                                  @CurrentUser UserPrincipal principal) {
         String url = request.getRequestURL().toString();
         try {
+            storageUsageService.checkUserQuota(principal.getEmail(), file.getSize());
             return ResponseEntity.ok(new ApiResponse(true, "File successfully uploaded",
-                    fileService.uploadFile(file, url)));
+                    fileService.uploadFile(file, url, principal.getEmail())));
+        } catch (UploadRejectedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    /**
+     * Issues the challenge a client answers to offer a file: a nonce and a range of the file. It is issued
+     * whether or not the content is stored, so it tells nothing about the content.
+     */
+    @PostMapping("/offer/challenge")
+    public ResponseEntity<ApiResponse> challengeFileOffer(@Valid @RequestBody FileOfferRequest offerRequest,
+                                                          @CurrentUser UserPrincipal principal) {
+        FileOfferChallengeResponse challenge = fileService.createOfferChallenge(offerRequest, principal.getEmail());
+        return ResponseEntity.ok(new ApiResponse(true, "Offer challenge issued", challenge));
+    }
+
+    /**
+     * Lets a client offer the SHA-256 hash and size of a file before uploading it. When the content is
+     * already stored a new file sharing it is created and its url returned, otherwise the client gets a
+     * 404 and uploads the file as usual.
+     * <p>
+     * The hash of a file is no proof of holding it, it may have leaked or been published, so the offer must
+     * carry a challenge from {@code /offer/challenge} and its proof: the hex SHA-256 of the nonce followed by
+     * the bytes of the challenged range. A proof that doesn't match the stored content gets the same 404 as
+     * absent content. Proving possession keeps content shared between all users; scoping offers to the files
+     * of the user instead would stop the disclosure but lose most of the savings.
+     */
+    @PostMapping("/offer")
+    public ResponseEntity<ApiResponse> offerFile(@Valid @RequestBody FileOfferRequest offerRequest, HttpServletRequest request,
+                                                 @CurrentUser UserPrincipal principal) {
+        String url = request.getRequestURL().toString();
+        try {
+            storageUsageService.checkUserQuota(principal.getEmail(), offerRequest.getFileSize());
+            String fileUrl = fileService.uploadFileIfPresent(offerRequest, url, principal.getEmail());
+            if (fileUrl == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiResponse(false, "File content not found, upload the file"));
+            }
+            return ResponseEntity.ok(new ApiResponse(true, "File successfully uploaded", fileUrl));
         } catch (Exception ex) {
             return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
         }
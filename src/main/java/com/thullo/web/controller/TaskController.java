@@ -4,6 +4,8 @@ import com.thullo.annotation.CurrentUser;
 import com.thullo.data.model.Attachment;
 import com.thullo.data.model.Task;
 import com.thullo.security.UserPrincipal;
+import com.thullo.service.BoardChangeService;
+import com.thullo.service.FileService;
 import com.thullo.service.TaskService;
 import com.thullo.web.exception.BadRequestException;
 import com.thullo.web.exception.ResourceNotFoundException;
@@ -11,11 +13,15 @@ import com.thullo.web.payload.request.TaskMoveRequest;
 import com.thullo.web.payload.request.TaskRequest;
 import com.thullo.web.payload.response.ApiResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
@@ -23,11 +29,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.thullo.util.Helper.versionETag;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("api/v1/thullo/tasks")
 public class TaskController {
     private final TaskService taskService;
+    private final FileService fileService;
+    private final BoardChangeService boardChangeService;
 
     @PostMapping(value = "/{boardTag}", consumes = {MediaType.MULTIPART_FORM_DATA_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag)")
@@ -54,8 +64,11 @@ public class TaskController {
 
     @GetMapping("{boardTag}/{boardRef}")
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
-    public ResponseEntity<ApiResponse> getTask(@PathVariable String boardTag, @PathVariable String boardRef) {
+    public ResponseEntity<ApiResponse> getTask(@PathVariable String boardTag, @PathVariable String boardRef, WebRequest webRequest) {
         try {
+            // tasks are versioned with their board
+            Long version = boardChangeService.getTaskVersion(boardRef);
+            if (version != null && webRequest.checkNotModified(versionETag(version))) return null;
             Task task = taskService.getTask(boardRef);
             return ResponseEntity.ok(new ApiResponse(true, "Task fetched successfully", task));
         } catch (ResourceNotFoundException ex) {
@@ -66,10 +79,11 @@ public class TaskController {
 
     @PutMapping(value = "{boardTag}/{boardRef}", consumes = {MediaType.MULTIPART_FORM_DATA_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
-    public ResponseEntity<ApiResponse> editTask(@PathVariable String boardTag, @PathVariable String boardRef, TaskRequest taskRequest, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse> editTask(@PathVariable String boardTag, @PathVariable String boardRef, TaskRequest taskRequest, HttpServletRequest request,
+                                                @CurrentUser UserPrincipal principal) {
         taskRequest.setRequestUrl(request.getRequestURL().toString());
         try {
-            Task task = taskService.editTask(boardRef, taskRequest);
+            Task task = taskService.editTask(boardRef, taskRequest, principal.getEmail());
             return ResponseEntity.ok(new ApiResponse(true, "Task created successfully", task));
         } catch (ResourceNotFoundException | BadRequestException | IOException ex) {
             return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
@@ -100,8 +114,8 @@ public class TaskController {
     }
 
     @GetMapping("/search")
-    public List<Task> searchTasks(@RequestParam("params") String searchParams) {
-        return taskService.searchTask(searchParams);
+    public List<Task> searchTasks(@RequestParam("params") String searchParams, @CurrentUser UserPrincipal principal) {
+        return taskService.searchTask(searchParams, principal.getEmail());
     }
 
     @PutMapping("{boardTag}/{boardRef}/contributors")
@@ -129,9 +143,10 @@ public class TaskController {
 
     @PutMapping("{boardTag}/{boardRef}/cover-image")
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
-    public ResponseEntity<ApiResponse> addCoverImage(@PathVariable String boardTag, @PathVariable String boardRef, @RequestParam("file") MultipartFile file, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse> addCoverImage(@PathVariable String boardTag, @PathVariable String boardRef, @RequestParam("file") MultipartFile file, HttpServletRequest request,
+                                                     @CurrentUser UserPrincipal principal) {
         try {
-            Task task = taskService.updateTaskImage(boardRef, file, request.getRequestURL().toString());
+            Task task = taskService.updateTaskImage(boardRef, file, request.getRequestURL().toString(), principal.getEmail());
             return ResponseEntity.ok(new ApiResponse(true, "cover image added successfully", task));
         } catch (BadRequestException | ResourceNotFoundException | IOException ex) {
             return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
@@ -152,20 +167,52 @@ public class TaskController {
 
     @PostMapping("{boardTag}/{boardRef}/add-attachment")
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
-    public ResponseEntity<ApiResponse> addAttachment(@PathVariable String boardTag, @PathVariable String boardRef, @RequestParam("file") MultipartFile file, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse> addAttachment(@PathVariable String boardTag, @PathVariable String boardRef, @RequestParam("file") MultipartFile file, HttpServletRequest request,
+                                                     @CurrentUser UserPrincipal principal) {
+        try {
+            Attachment attachment = taskService.addAttachmentToTask(boardRef, request.getRequestURL().toString(), file, principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "Attachment added successfully", attachment));
+        } catch (BadRequestException | ResourceNotFoundException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    @PostMapping("{boardTag}/{boardRef}/add-attachment/{sessionId}")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
+    public ResponseEntity<ApiResponse> addAttachment(@PathVariable String boardTag, @PathVariable String boardRef, @PathVariable String sessionId,
+                                                     HttpServletRequest request, @CurrentUser UserPrincipal principal) {
         try {
-            Attachment attachment = taskService.addAttachmentToTask(boardRef, request.getRequestURL().toString(), file);
+            Attachment attachment = taskService.addAttachmentToTask(boardRef, request.getRequestURL().toString(), sessionId, principal.getEmail());
             return ResponseEntity.ok(new ApiResponse(true, "Attachment added successfully", attachment));
         } catch (BadRequestException | ResourceNotFoundException | IOException ex) {
             return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
         }
     }
 
+    @GetMapping("{boardTag}/{boardRef}/attachments/archive")
+    @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
+    public ResponseEntity<?> downloadAttachments(@PathVariable String boardTag, @PathVariable String boardRef) {
+        try {
+            List<Attachment> attachments = taskService.getAttachments(boardTag, boardRef);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDisposition(ContentDisposition.attachment().filename(boardRef + "-attachments.zip").build());
+            StreamingResponseBody body = outputStream -> fileService.writeAttachmentArchive(attachments, false, outputStream);
+            return ResponseEntity.ok().headers(headers).body(body);
+        } catch (ResourceNotFoundException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
     @DeleteMapping("{boardTag}/{boardRef}/{attachmentId}")
     @PreAuthorize("@boardServiceImpl.hasBoardRole(authentication.principal.email, #boardTag) or hasRole('BOARD_' + #boardTag) or hasRole('TASK_' + #boardRef)")
-    public ResponseEntity<ApiResponse> addAttachment(@PathVariable String boardTag, @PathVariable String boardRef, @PathVariable Long attachmentId, HttpServletRequest request) {
-        taskService.deleteAttachmentFromTask(request.getRequestURL().toString(), attachmentId);
-        return ResponseEntity.ok(new ApiResponse(true, "Attachment is  successfully deleted"));
+    public ResponseEntity<ApiResponse> addAttachment(@PathVariable String boardTag, @PathVariable String boardRef, @PathVariable Long attachmentId) {
+        try {
+            taskService.deleteAttachmentFromTask(boardTag, boardRef, attachmentId);
+            return ResponseEntity.ok(new ApiResponse(true, "Attachment is  successfully deleted"));
+        } catch (ResourceNotFoundException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
     }
 
 }
@@ -0,0 +1,81 @@
+package com.thullo.web.controller;
+
+import com.thullo.annotation.CurrentUser;
+import com.thullo.security.UserPrincipal;
+import com.thullo.service.UploadSessionService;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.exception.ResourceNotFoundException;
+import com.thullo.web.payload.request.UploadSessionRequest;
+import com.thullo.web.payload.response.ApiResponse;
+import com.thullo.web.payload.response.UploadSessionResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.io.IOException;
+
+/**
+ * Resumable uploads for files beyond the multipart size limit. A client creates a session, PUTs the chunks
+ * as raw request bodies in any order, checks which chunks arrived after an interruption and completes the
+ * session to get the url of the file.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/thullo/uploads")
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    @PostMapping
+    public ResponseEntity<ApiResponse> createSession(@Valid @RequestBody UploadSessionRequest sessionRequest, @CurrentUser UserPrincipal principal) {
+        try {
+            UploadSessionResponse session = uploadSessionService.createSession(sessionRequest, principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "Upload session created successfully", session));
+        } catch (BadRequestException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<ApiResponse> getSession(@PathVariable String sessionId, @CurrentUser UserPrincipal principal) {
+        try {
+            UploadSessionResponse session = uploadSessionService.getSession(sessionId, principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "Upload session fetched successfully", session));
+        } catch (ResourceNotFoundException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    @PutMapping(value = "/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ApiResponse> writeChunk(@PathVariable String sessionId, @PathVariable int index,
+                                                  HttpServletRequest request, @CurrentUser UserPrincipal principal) {
+        try {
+            UploadSessionResponse session = uploadSessionService.writeChunk(sessionId, index, request.getInputStream(), principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "Chunk uploaded successfully", session));
+        } catch (ResourceNotFoundException | BadRequestException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<ApiResponse> completeSession(@PathVariable String sessionId, HttpServletRequest request, @CurrentUser UserPrincipal principal) {
+        try {
+            String fileUrl = uploadSessionService.completeSession(sessionId, request.getRequestURL().toString(), principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "File successfully uploaded", fileUrl));
+        } catch (ResourceNotFoundException | BadRequestException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<ApiResponse> abortSession(@PathVariable String sessionId, @CurrentUser UserPrincipal principal) {
+        try {
+            uploadSessionService.abortSession(sessionId, principal.getEmail());
+            return ResponseEntity.ok(new ApiResponse(true, "Upload session deleted successfully"));
+        } catch (ResourceNotFoundException | IOException ex) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, ex.getMessage()));
+        }
+    }
+}
@@ -12,9 +12,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
+import static com.thullo.util.Helper.versionETag;
+
 @RestController
 @Slf4j
 @RequestMapping("api/v1/thullo/users")
@@ -23,8 +26,10 @@ public class UserController {
     private final UserService userService;
 
     @GetMapping("/profile")
-    public ResponseEntity<ApiResponse> getUserDetails(@CurrentUser UserPrincipal userPrincipal) {
+    public ResponseEntity<ApiResponse> getUserDetails(@CurrentUser UserPrincipal userPrincipal, WebRequest webRequest) {
         try {
+            Long version = userService.getProfileVersion(userPrincipal.getEmail());
+            if (version != null && webRequest.checkNotModified(versionETag(version))) return null;
             UserProfileResponse userDetails = userService.getUserDetails(userPrincipal.getEmail());
             return ResponseEntity.ok(new ApiResponse(
                     true, "User data successfully retrieved", userDetails));
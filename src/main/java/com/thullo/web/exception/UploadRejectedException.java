@@ -0,0 +1,21 @@
+package com.thullo.web.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when an upload can't be taken on right now because the server is at its limit. Unlike the other
+ * exceptions it is unchecked, so it passes the catch blocks of the controllers and is answered by
+ * {@link CustomControllerAdvice} with its status and a {@code Retry-After} header.
+ */
+@Getter
+public class UploadRejectedException extends RuntimeException {
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public UploadRejectedException(String message, HttpStatus status, long retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,30 @@
+package com.thullo.web.payload.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+
+@Data
+public class FileOfferRequest {
+    @NotBlank(message = "Content hash cannot be blank")
+    @Pattern(regexp = "[0-9a-fA-F]{64}", message = "Content hash must be a hex encoded SHA-256 hash")
+    private String contentHash;
+
+    @NotNull(message = "File size cannot be null")
+    @Positive(message = "File size must be positive")
+    private Long fileSize;
+
+    @NotBlank(message = "File name cannot be blank")
+    private String fileName;
+
+    /**
+     * The challenge issued for the offer, required once the content is offered.
+     */
+    private String challenge;
+
+    @Pattern(regexp = "[0-9a-fA-F]{64}", message = "Proof must be a hex encoded SHA-256 hash")
+    private String proof;
+}
@@ -0,0 +1,17 @@
+package com.thullo.web.payload.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+@Data
+public class UploadSessionRequest {
+    @NotBlank(message = "File name cannot be blank")
+    private String fileName;
+
+    @NotNull(message = "File size cannot be null")
+    @Positive(message = "File size must be positive")
+    private Long fileSize;
+}
@@ -0,0 +1,46 @@
+package com.thullo.web.payload.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class AttachmentResponse {
+    @JsonIgnore
+    private Long taskId;
+
+    private Long id;
+
+    private String fileName;
+
+    private String fileSize;
+
+    private String fileUrl;
+
+    private Long rawSize;
+
+    private Long storedSize;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updatedAt;
+
+    public AttachmentResponse(Long taskId, Long id, String fileName, String fileSize, String fileUrl, Long rawSize,
+                              Long storedSize, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.taskId = taskId;
+        this.id = id;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.fileUrl = fileUrl;
+        this.rawSize = rawSize;
+        this.storedSize = storedSize;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+}
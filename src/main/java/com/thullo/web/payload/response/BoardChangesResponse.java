@@ -0,0 +1,26 @@
+package com.thullo.web.payload.response;
+
+import com.thullo.data.model.BoardChange;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes of a board since a version the client has, in the order they were made. When the changes can't
+ * be given, because they were compacted away or are too many, {@code resync} is set and the client has to fetch
+ * the whole board again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BoardChangesResponse {
+    /**
+     * The current version of the board, to ask for the next changes from.
+     */
+    private long version;
+    private boolean resync;
+    private List<BoardChange> changes = new ArrayList<>();
+}
@@ -1,12 +1,10 @@
 package com.thullo.web.payload.response;
 
-import com.thullo.data.model.Task;
-import com.thullo.data.model.User;
 import lombok.Data;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -26,11 +24,11 @@ public class BoardResponse {
 
     private LocalDateTime createdAt;
 
-    private Set<User> collaborators = new HashSet<>();
+    private Set<UserSummaryResponse> collaborators = new LinkedHashSet<>();
 
     @Data
     public static class Column {
         private String name;
-        private List<Task> tasks = new ArrayList<>();
+        private List<BoardTaskResponse> tasks = new ArrayList<>();
     }
 }
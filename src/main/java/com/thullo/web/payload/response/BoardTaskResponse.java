@@ -0,0 +1,63 @@
+package com.thullo.web.payload.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.thullo.data.model.Status;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A task as shown in a column of a board, with the same fields as the serialised {@link com.thullo.data.model.Task}.
+ */
+@Data
+@NoArgsConstructor
+public class BoardTaskResponse {
+    @JsonIgnore
+    private Long boardId;
+
+    private Long id;
+
+    private String name;
+
+    private String imageUrl;
+
+    private Long position;
+
+    private Status status;
+
+    private String boardRef;
+
+    private String description;
+
+    private List<AttachmentResponse> attachments = new ArrayList<>();
+
+    private Set<UserSummaryResponse> contributors = new LinkedHashSet<>();
+
+    private Set<LabelResponse> labels = new LinkedHashSet<>();
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updatedAt;
+
+    public BoardTaskResponse(Long boardId, Long id, String name, String imageUrl, Long position, Status status,
+                             String boardRef, String description, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.boardId = boardId;
+        this.id = id;
+        this.name = name;
+        this.imageUrl = imageUrl;
+        this.position = position;
+        this.status = status;
+        this.boardRef = boardRef;
+        this.description = description;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+}
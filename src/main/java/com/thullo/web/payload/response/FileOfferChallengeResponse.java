@@ -0,0 +1,22 @@
+package com.thullo.web.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Asks the client offering a file to prove it holds the content: the proof is the hex encoded SHA-256 hash of
+ * the nonce followed by the {@code length} bytes of the original content starting at {@code offset}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileOfferChallengeResponse {
+    private String challenge;
+    private String nonce;
+    private long offset;
+    private long length;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,40 @@
+package com.thullo.web.payload.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class LabelResponse {
+    @JsonIgnore
+    private Long taskId;
+
+    private Long id;
+
+    private String name;
+
+    private String colorCode;
+
+    private String backgroundCode;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updatedAt;
+
+    public LabelResponse(Long taskId, Long id, String name, String colorCode, String backgroundCode,
+                         LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.taskId = taskId;
+        this.id = id;
+        this.name = name;
+        this.colorCode = colorCode;
+        this.backgroundCode = backgroundCode;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,18 @@
+package com.thullo.web.payload.response;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class UploadSessionResponse {
+    private String sessionId;
+    private String fileName;
+    private long fileSize;
+    private long chunkSize;
+    private int totalChunks;
+    private List<Integer> receivedChunks;
+    private long receivedBytes;
+    private LocalDateTime expiresAt;
+}
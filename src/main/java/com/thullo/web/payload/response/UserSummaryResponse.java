@@ -0,0 +1,37 @@
+package com.thullo.web.payload.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The public details of a collaborator or contributor shown on a board.
+ */
+@Data
+@NoArgsConstructor
+public class UserSummaryResponse {
+    /**
+     * The board or task the user collaborates on, used to assemble the board view.
+     */
+    @JsonIgnore
+    private Long ownerId;
+
+    private Long id;
+
+    private String name;
+
+    private String email;
+
+    private String imageUrl;
+
+    private String bio;
+
+    public UserSummaryResponse(Long ownerId, Long id, String name, String email, String imageUrl, String bio) {
+        this.ownerId = ownerId;
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.imageUrl = imageUrl;
+        this.bio = bio;
+    }
+}
@@ -0,0 +1,125 @@
+package com.thullo.benchmark;
+
+import com.thullo.data.model.ContentCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Compares throughput and compression ratio of every {@link ContentCodec} and level on a set of sample
+ * payloads. Run with {@code ./gradlew codecBenchmark}, optionally with {@code -PbenchmarkDir=<dir>} to add
+ * the files of a directory (e.g. real attachments) to the samples.
+ */
+public class CodecBenchmark {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int[] LEVELS = {1, 6, 9};
+
+    public static void main(String[] args) throws IOException {
+        Map<String, byte[]> samples = new LinkedHashMap<>();
+        samples.put("csv (1 MB)", textSample(1 << 20));
+        samples.put("json (1 MB)", jsonSample(1 << 20));
+        samples.put("random (1 MB)", randomSample(1 << 20));
+        if (args.length > 0) {
+            try (Stream<Path> files = Files.list(Paths.get(args[0]))) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    samples.put(file.getFileName().toString(), Files.readAllBytes(file));
+                }
+            }
+        }
+
+        System.out.printf("%-24s %-9s %5s %10s %12s %12s%n", "sample", "codec", "level", "ratio", "encode MB/s", "decode MB/s");
+        for (Map.Entry<String, byte[]> sample : samples.entrySet()) {
+            for (ContentCodec codec : ContentCodec.values()) {
+                int[] levels = codec == ContentCodec.IDENTITY ? new int[]{0} : LEVELS;
+                for (int level : levels) {
+                    run(sample.getKey(), sample.getValue(), codec, level);
+                }
+            }
+        }
+    }
+
+    private static void run(String name, byte[] content, ContentCodec codec, int level) throws IOException {
+        byte[] encoded = null;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            encoded = encode(content, codec, level);
+            decode(encoded, codec);
+        }
+
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            encoded = encode(content, codec, level);
+            encodeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            decode(encoded, codec);
+            decodeNanos += System.nanoTime() - start;
+        }
+
+        double megabytes = content.length * (double) MEASURED_ROUNDS / (1 << 20);
+        System.out.printf("%-24s %-9s %5d %10.3f %12.1f %12.1f%n", name, codec.getContentEncoding(), level,
+                encoded.length / (double) content.length,
+                megabytes / (encodeNanos / 1e9),
+                megabytes / (decodeNanos / 1e9));
+    }
+
+    private static byte[] encode(byte[] content, ContentCodec codec, int level) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(content.length);
+        try (OutputStream out = codec.encode(encoded, level, BUFFER_SIZE)) {
+            out.write(content);
+        }
+        return encoded.toByteArray();
+    }
+
+    private static void decode(byte[] encoded, ContentCodec codec) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = codec.decode(new ByteArrayInputStream(encoded), BUFFER_SIZE)) {
+            while (in.read(buffer) != -1) {
+                // discard, only the throughput is measured
+            }
+        }
+    }
+
+    private static byte[] textSample(int size) {
+        Random random = new Random(1);
+        String[] statuses = {"backlog", "in progress", "in review", "completed"};
+        StringBuilder csv = new StringBuilder("id,name,status,position\n");
+        for (int i = 0; csv.length() < size; i++) {
+            csv.append(i).append(",Task ").append(random.nextInt(10_000)).append(',')
+                    .append(statuses[random.nextInt(statuses.length)]).append(',').append(random.nextInt(50)).append('\n');
+        }
+        return csv.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] jsonSample(int size) {
+        Random random = new Random(2);
+        StringBuilder json = new StringBuilder("[");
+        while (json.length() < size) {
+            json.append("{\"boardRef\":\"DEV-").append(random.nextInt(1000))
+                    .append("\",\"name\":\"Task ").append(random.nextInt(10_000))
+                    .append("\",\"description\":\"").append(Long.toHexString(random.nextLong()))
+                    .append("\",\"labels\":[\"frontend\",\"urgent\"]},");
+        }
+        return json.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomSample(int size) {
+        byte[] content = new byte[size];
+        new Random(3).nextBytes(content);
+        return content;
+    }
+}
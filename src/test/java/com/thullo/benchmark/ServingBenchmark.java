@@ -0,0 +1,164 @@
+package com.thullo.benchmark;
+
+import com.thullo.storage.ServingFileCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Compares throughput and CPU time per GB of the ways a file can be sent to a client: the original path that
+ * read the whole blob into a byte array and copied it through a stream, copying a stream through a fixed
+ * buffer, {@link ServingFileCache#transfer} to a plain output stream as the controller does when the container
+ * has no sendfile support, and {@link FileChannel#transferTo} straight to the socket, which is what the sendfile
+ * support of the container does and the only zero-copy row. Files are sent over a loopback socket to a thread
+ * that discards them. Run with
+ * {@code ./gradlew servingBenchmark}, optionally with {@code -PbenchmarkSizeMb=<size>} to change the file size.
+ */
+public class ServingBenchmark {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        Path file = Files.createTempFile("thullo-serving-benchmark-", ".bin");
+        try {
+            writeSample(file, (long) sizeMb << 20);
+            System.out.printf("%-28s %12s %14s%n", "path", "MB/s", "CPU ms / GB");
+            run("byte[] + stream copy", file, ServingBenchmark::sendByteArray);
+            run("stream copy (8 KB buffer)", file, ServingBenchmark::sendStream);
+            run("ServingFileCache.transfer", file, ServingBenchmark::sendServingTransfer);
+            run("sendfile (zero-copy)", file, ServingBenchmark::sendTransferTo);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void run(String name, Path file, Sender sender) throws Exception {
+        long size = Files.size(file);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) send(file, sender);
+
+        long nanos = 0;
+        long cpuNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long[] measured = send(file, sender);
+            nanos += measured[0];
+            cpuNanos += measured[1];
+        }
+
+        double megabytes = size * (double) MEASURED_ROUNDS / (1 << 20);
+        double gigabytes = megabytes / 1024;
+        System.out.printf("%-28s %12.1f %14.1f%n", name, megabytes / (nanos / 1e9), cpuNanos / 1e6 / gigabytes);
+    }
+
+    /**
+     * Sends the file once and returns the wall clock and CPU time of the sending thread in nanoseconds.
+     */
+    private static long[] send(Path file, Sender sender) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread drain = new Thread(() -> {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                try (SocketChannel client = server.accept()) {
+                    while (client.read(buffer) != -1) buffer.clear();
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            drain.start();
+
+            long start;
+            long cpuStart;
+            long cpuEnd;
+            try (SocketChannel socket = SocketChannel.open(server.getLocalAddress())) {
+                start = System.nanoTime();
+                cpuStart = THREADS.getCurrentThreadCpuTime();
+                sender.send(file, socket);
+                cpuEnd = THREADS.getCurrentThreadCpuTime();
+            }
+            drain.join();
+            return new long[]{System.nanoTime() - start, cpuEnd - cpuStart};
+        }
+    }
+
+    private static void sendByteArray(Path file, SocketChannel socket) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        copy(new ByteArrayInputStream(content), Channels.newOutputStream(socket));
+    }
+
+    private static void sendStream(Path file, SocketChannel socket) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            copy(in, Channels.newOutputStream(socket));
+        }
+    }
+
+    private static void sendTransferTo(Path file, SocketChannel socket) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, socket);
+            }
+        }
+    }
+
+    /**
+     * Sends the file like a response body without sendfile: the servlet output stream the body writes to is no
+     * channel, so it is hidden behind a plain stream here too.
+     */
+    private static void sendServingTransfer(Path file, SocketChannel socket) throws IOException {
+        OutputStream socketStream = Channels.newOutputStream(socket);
+        OutputStream servletStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                socketStream.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                socketStream.write(b, off, len);
+            }
+        };
+        ServingFileCache.transfer(file, 0, Files.size(file), servletStream);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+    }
+
+    private static void writeSample(Path file, long size) throws IOException {
+        byte[] block = new byte[1 << 20];
+        new Random(1).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Sender {
+        void send(Path file, SocketChannel socket) throws IOException;
+    }
+}
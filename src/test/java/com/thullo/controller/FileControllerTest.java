@@ -0,0 +1,209 @@
+package com.thullo.controller;
+
+import com.thullo.data.model.ContentCodec;
+import com.thullo.data.model.FileData;
+import com.thullo.service.FileService;
+import com.thullo.service.StorageUsageService;
+import com.thullo.service.ThumbnailService;
+import com.thullo.service.UploadIngestor;
+import com.thullo.storage.ServingFileCache;
+import com.thullo.web.controller.FileController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class FileControllerTest {
+    private static final String FILE_URL = "/api/v1/thullo/files/report.txt";
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private ThumbnailService thumbnailService;
+
+    @Mock
+    private StorageUsageService storageUsageService;
+
+    @Mock
+    private ServingFileCache servingFileCache;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockMvc = MockMvcBuilders.standaloneSetup(new FileController(fileService, thumbnailService, storageUsageService,
+                        servingFileCache, 31536000, 5))
+                .build();
+
+        FileData file = new FileData("report", "report.txt", "txt");
+        file.setFileSize((long) CONTENT.length);
+        file.setCodec(ContentCodec.IDENTITY);
+        file.setContentHash("abc123");
+        file.setCreatedAt(LocalDateTime.of(2023, 1, 1, 0, 0));
+        lenient().when(fileService.getFile("report")).thenReturn(file);
+        lenient().when(fileService.getMediaTypeForFileType("txt")).thenReturn(MediaType.TEXT_PLAIN);
+        lenient().doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write(CONTENT, (int) (long) invocation.getArgument(1), (int) (long) invocation.getArgument(2));
+            return null;
+        }).when(fileService).writeFile(eq("report"), anyLong(), anyLong(), any(OutputStream.class));
+        lenient().doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write(CONTENT);
+            return null;
+        }).when(fileService).writeFile(eq("report"), any(OutputStream.class));
+    }
+
+    @Test
+    void testGetFile_isCachedForConfiguredMaxAge() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"));
+    }
+
+    @Test
+    void testGetFile_stillProcessing_asksToRetry() throws Exception {
+        when(fileService.getUploadStatus("pending")).thenReturn(UploadIngestor.Status.PROCESSING);
+
+        mockMvc.perform(get("/api/v1/thullo/files/pending.txt"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    @Test
+    void testGetFile_withRange_returnsPartialContent() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void testGetFile_withSuffixRange_returnsLastBytes() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void testGetFile_withOpenEndedRange_returnsRestOfFile() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=6-"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 6-9/10"))
+                .andExpect(content().string("6789"));
+    }
+
+    @Test
+    void testGetFile_withSeveralRanges_returnsByteranges() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=0-1,8-9"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges;boundary=")))
+                .andExpect(content().string(containsString("Content-Range: bytes 0-1/10\r\n\r\n01")))
+                .andExpect(content().string(containsString("Content-Range: bytes 8-9/10\r\n\r\n89")));
+    }
+
+    @Test
+    void testGetFile_withRangeOutsideFile_returnsRangeNotSatisfiable() throws Exception {
+        mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void testGetFile_withMalformedRange_returnsWholeFile() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=5-2"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void testGetFile_withOverlappingRanges_mergesThem() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=4-6,1-3,5-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-6/10"))
+                .andExpect(content().string("123456"));
+    }
+
+    @Test
+    void testGetFile_withRangesLargerThanFile_returnsWholeFile() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL).header(HttpHeaders.RANGE, "bytes=0-,0-,0-"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void testGetFile_withIfRangeMismatch_returnsWholeFile() throws Exception {
+        MvcResult result = mockMvc.perform(get(FILE_URL)
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string("0123456789"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.thullo.security;
+
+import com.thullo.web.exception.UploadRejectedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadAdmissionControlTest {
+
+    private UploadAdmissionControl uploadAdmissionControl;
+
+    @BeforeEach
+    void setUp() {
+        uploadAdmissionControl = new UploadAdmissionControl(true, 100, 60, 0, 2);
+    }
+
+    @Test
+    void testReserve_overUserBudget_rejectedWithTooManyRequests() throws InterruptedException {
+        uploadAdmissionControl.reserve("ada@thullo.com", 50);
+
+        UploadRejectedException ex = assertThrows(UploadRejectedException.class,
+                () -> uploadAdmissionControl.reserve("ada@thullo.com", 20));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+    }
+
+    @Test
+    void testReserve_overNodeBudget_rejectedWithServiceUnavailable() throws InterruptedException {
+        uploadAdmissionControl.reserve("ada@thullo.com", 50);
+        uploadAdmissionControl.reserve("alan@thullo.com", 40);
+
+        UploadRejectedException ex = assertThrows(UploadRejectedException.class,
+                () -> uploadAdmissionControl.reserve("grace@thullo.com", 20));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+        assertEquals(2, ex.getRetryAfterSeconds());
+    }
+
+    @Test
+    void testRelease_freesBudgetForNextUpload() throws InterruptedException {
+        UploadAdmissionControl.Reservation reservation = uploadAdmissionControl.reserve("ada@thullo.com", 50);
+        uploadAdmissionControl.release(reservation);
+
+        uploadAdmissionControl.reserve("ada@thullo.com", 60);
+
+        assertEquals(60, uploadAdmissionControl.getStats().getInFlightBytes());
+        assertEquals(1, uploadAdmissionControl.getStats().getUsers());
+    }
+}
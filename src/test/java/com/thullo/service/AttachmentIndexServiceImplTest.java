@@ -0,0 +1,145 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.AttachmentTerm;
+import com.thullo.data.model.FileMetadata;
+import com.thullo.data.model.Task;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.AttachmentTermRepository;
+import com.thullo.event.FileUploadedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AttachmentIndexServiceImplTest {
+    private static final long MAX_BYTES = 1024;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private UploadIngestor uploadIngestor;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private AttachmentTermRepository attachmentTermRepository;
+
+    private AttachmentIndexServiceImpl attachmentIndexService;
+
+    @BeforeEach
+    void setUp() {
+        attachmentIndexService = new AttachmentIndexServiceImpl(fileService, uploadIngestor, attachmentRepository,
+                attachmentTermRepository, Runnable::run, true, new String[]{"txt", "csv"}, MAX_BYTES, 10);
+    }
+
+    @Test
+    void testTermCollector_collectsDistinctLowerCaseWords() {
+        AttachmentIndexServiceImpl.TermCollector collector = new AttachmentIndexServiceImpl.TermCollector(10);
+        collector.write("Quarterly report, REPORT of Q3-2023: a über-test".getBytes(StandardCharsets.UTF_8));
+        collector.close();
+
+        assertEquals(List.of("quarterly", "report", "of", "q3", "2023", "über", "test"), List.copyOf(collector.getTerms()));
+    }
+
+    @Test
+    void testTermCollector_characterSplitBetweenWrites_isDecoded() {
+        byte[] text = "naïve".getBytes(StandardCharsets.UTF_8);
+        AttachmentIndexServiceImpl.TermCollector collector = new AttachmentIndexServiceImpl.TermCollector(10);
+        // the two bytes of ï arrive in separate writes
+        collector.write(text, 0, 3);
+        collector.write(text, 3, text.length - 3);
+        collector.close();
+
+        assertEquals(Set.of("naïve"), collector.getTerms());
+    }
+
+    @Test
+    void testTermCollector_stopsAtMaxTerms() {
+        AttachmentIndexServiceImpl.TermCollector collector = new AttachmentIndexServiceImpl.TermCollector(2);
+        collector.write("one two three".getBytes(StandardCharsets.UTF_8));
+        collector.close();
+
+        assertEquals(List.of("one", "two"), List.copyOf(collector.getTerms()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testIndex_textAttachment_savesTermsOfCappedContent() throws Exception {
+        when(attachmentRepository.findById(7L)).thenReturn(Optional.of(attachment("notes.txt")));
+        when(fileService.getFileMetadata("file")).thenReturn(mock(FileMetadata.class));
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write("Release notes".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(fileService).writeFile(eq("file"), eq(0L), eq(MAX_BYTES), any(OutputStream.class));
+
+        attachmentIndexService.index(attachment("notes.txt"));
+
+        ArgumentCaptor<Iterable<AttachmentTerm>> saved = ArgumentCaptor.forClass(Iterable.class);
+        verify(attachmentTermRepository).deleteByAttachmentId(7L);
+        verify(attachmentTermRepository).saveAll(saved.capture());
+        assertEquals(Set.of("release", "notes"), StreamSupport.stream(saved.getValue().spliterator(), false)
+                .map(AttachmentTerm::getTerm)
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testIndex_fileStillBeingStored_waitsForUpload() throws Exception {
+        when(attachmentRepository.findById(7L)).thenReturn(Optional.of(attachment("notes.txt")));
+
+        attachmentIndexService.index(attachment("notes.txt"));
+
+        verify(fileService, never()).writeFile(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testIndex_binaryAttachment_isSkipped() {
+        attachmentIndexService.index(attachment("photo.png"));
+
+        verify(attachmentRepository, never()).findById(any());
+    }
+
+    @Test
+    void testOnFileUploaded_indexesAttachmentsOfFile() {
+        when(uploadIngestor.isEnabled()).thenReturn(true);
+        when(attachmentRepository.findByFileId("file")).thenReturn(List.of(attachment("notes.txt")));
+
+        attachmentIndexService.onFileUploaded(new FileUploadedEvent("file", "txt", "user@mail.com", 13, null));
+
+        verify(attachmentRepository).findById(7L);
+    }
+
+    private Attachment attachment(String fileName) {
+        Task task = new Task();
+        task.setId(3L);
+        Attachment attachment = new Attachment();
+        attachment.setId(7L);
+        attachment.setTask(task);
+        attachment.setFileName(fileName);
+        attachment.setFileUrl("http://localhost:8080/api/v1/thullo/files/file." + fileName.substring(fileName.indexOf('.') + 1));
+        return attachment;
+    }
+}
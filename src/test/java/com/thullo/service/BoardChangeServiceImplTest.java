@@ -0,0 +1,125 @@
+package com.thullo.service;
+
+import com.thullo.data.model.BoardChange;
+import com.thullo.data.model.BoardChangeType;
+import com.thullo.data.repository.BoardChangeRepository;
+import com.thullo.data.repository.BoardRepository;
+import com.thullo.data.repository.TaskRepository;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.response.BoardChangesResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BoardChangeServiceImplTest {
+    @Mock
+    private BoardRepository boardRepository;
+
+    @Mock
+    private TaskRepository taskRepository;
+
+    @Mock
+    private BoardChangeRepository boardChangeRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private BoardChangeServiceImpl boardChangeService;
+
+    @BeforeEach
+    void setUp() {
+        boardChangeService = new BoardChangeServiceImpl(boardRepository, taskRepository, boardChangeRepository,
+                eventPublisher, transactionTemplate, 1000, 168, 200);
+    }
+
+    @Test
+    void testGetChanges_returnsChangesInOrder() throws BadRequestException {
+        when(boardRepository.findVersionByBoardTag("QRY")).thenReturn(Optional.of(7L));
+        when(boardChangeRepository.findChangesSince(eq("QRY"), eq(5L), any(Pageable.class)))
+                .thenReturn(List.of(change(6), change(7)));
+
+        BoardChangesResponse response = boardChangeService.getChanges("QRY", 5);
+
+        assertFalse(response.isResync());
+        assertEquals(7, response.getVersion());
+        assertEquals(2, response.getChanges().size());
+    }
+
+    @Test
+    void testGetChanges_compactedVersion_asksForResync() throws BadRequestException {
+        when(boardRepository.findVersionByBoardTag("QRY")).thenReturn(Optional.of(7L));
+        when(boardChangeRepository.findChangesSince(eq("QRY"), eq(2L), any(Pageable.class)))
+                .thenReturn(List.of(change(5), change(6), change(7)));
+
+        BoardChangesResponse response = boardChangeService.getChanges("QRY", 2);
+
+        assertTrue(response.isResync());
+        assertEquals(7, response.getVersion());
+    }
+
+    @Test
+    void testGetChanges_gapOfUncommittedChange_stopsBeforeIt() throws BadRequestException {
+        when(boardRepository.findVersionByBoardTag("QRY")).thenReturn(Optional.of(8L));
+        when(boardChangeRepository.findChangesSince(eq("QRY"), eq(5L), any(Pageable.class)))
+                .thenReturn(List.of(change(6), change(8)));
+
+        BoardChangesResponse response = boardChangeService.getChanges("QRY", 5);
+
+        assertFalse(response.isResync());
+        assertEquals(6, response.getVersion());
+        assertEquals(1, response.getChanges().size());
+    }
+
+    @Test
+    void testUserChanged_bumpsEveryBoardInItsOwnTransaction() {
+        List<String> bumped = new ArrayList<>();
+        boolean[] inTransaction = {false};
+        when(transactionTemplate.execute(any())).then(invocation -> {
+            inTransaction[0] = true;
+            try {
+                return invocation.<TransactionCallback<Long>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction[0] = false;
+            }
+        });
+        when(boardRepository.incrementVersion(anyString())).then(invocation -> {
+            // the row lock of the bump is only held until the end of a transaction
+            assertTrue(inTransaction[0]);
+            bumped.add(invocation.getArgument(0));
+            return 1;
+        });
+        when(boardRepository.findBoardTagsByCollaborator("user@mail.com")).thenReturn(List.of("QRY"));
+        when(taskRepository.findBoardTagsByContributorOrCreator("user@mail.com")).thenReturn(List.of("ABC", "QRY"));
+        when(boardChangeRepository.save(any(BoardChange.class))).then(invocation -> invocation.getArgument(0));
+
+        boardChangeService.userChanged("user@mail.com");
+
+        assertEquals(List.of("ABC", "QRY"), bumped);
+    }
+
+    private BoardChange change(long version) {
+        return new BoardChange("QRY", version, BoardChangeType.TASK_UPDATED, "QRY-1", null);
+    }
+}
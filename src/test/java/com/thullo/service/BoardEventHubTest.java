@@ -0,0 +1,100 @@
+package com.thullo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thullo.event.BoardChangedEvent;
+import com.thullo.event.CollaboratorsRemovedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BoardEventHubTest {
+    private static final String USER = "user@mail.com";
+
+    private final List<Runnable> pendingWrites = new ArrayList<>();
+    private BoardEventHub boardEventHub;
+
+    @BeforeEach
+    void setUp() {
+        // writes are held back, as if the client stopped reading
+        boardEventHub = new BoardEventHub(pendingWrites::add, new ObjectMapper(), 60000, 2, 2);
+    }
+
+    @Test
+    void testOnBoardChanged_slowConsumer_isEvicted() {
+        assertNotNull(boardEventHub.subscribe("QRY", USER, () -> 1L));
+
+        boardEventHub.onBoardChanged(new BoardChangedEvent("QRY", 2, null));
+        assertEquals(1, boardEventHub.getStats().getConnections());
+
+        boardEventHub.onBoardChanged(new BoardChangedEvent("QRY", 3, null));
+
+        assertEquals(0, boardEventHub.getStats().getConnections());
+        assertEquals(1, boardEventHub.getStats().getEvicted());
+        assertEquals(0, boardEventHub.getStats().getBoards());
+    }
+
+    @Test
+    void testSubscribe_overMaxConnections_isRejected() {
+        boardEventHub.subscribe("QRY", USER, () -> 1L);
+        boardEventHub.subscribe("ABC", USER, () -> 1L);
+
+        assertNull(boardEventHub.subscribe("QRY", USER, () -> 1L));
+        assertEquals(1, boardEventHub.getStats().getRejected());
+    }
+
+    @Test
+    void testOnBoardChanged_otherBoard_isNotSent() {
+        boardEventHub.subscribe("QRY", USER, () -> 1L);
+
+        boardEventHub.onBoardChanged(new BoardChangedEvent("ABC", 2, null));
+
+        // only the write of the initial version event was scheduled
+        assertEquals(1, pendingWrites.size());
+    }
+
+    @Test
+    void testSubscribe_changeCommittedWhileSubscribing_isSentAfterVersion() {
+        boardEventHub.subscribe("QRY", USER, () -> {
+            boardEventHub.onBoardChanged(new BoardChangedEvent("QRY", 2, null));
+            return 1L;
+        });
+
+        runPendingWrites();
+
+        assertEquals(2, boardEventHub.getStats().getSent());
+    }
+
+    @Test
+    void testSubscribe_changeCoveredByVersion_isSkipped() {
+        boardEventHub.subscribe("QRY", USER, () -> {
+            boardEventHub.onBoardChanged(new BoardChangedEvent("QRY", 2, null));
+            return 2L;
+        });
+
+        runPendingWrites();
+
+        assertEquals(1, boardEventHub.getStats().getSent());
+    }
+
+    @Test
+    void testOnCollaboratorsRemoved_closesTheirConnections() {
+        boardEventHub.subscribe("QRY", USER, () -> 1L);
+        boardEventHub.subscribe("QRY", "other@mail.com", () -> 1L);
+
+        boardEventHub.onCollaboratorsRemoved(new CollaboratorsRemovedEvent("qry", Set.of(USER)));
+
+        assertEquals(1, boardEventHub.getStats().getConnections());
+        assertEquals(0, boardEventHub.getStats().getEvicted());
+    }
+
+    private void runPendingWrites() {
+        while (!pendingWrites.isEmpty()) pendingWrites.remove(0).run();
+    }
+}
@@ -0,0 +1,145 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.Board;
+import com.thullo.data.model.Label;
+import com.thullo.data.model.Status;
+import com.thullo.data.model.Task;
+import com.thullo.data.model.User;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.BoardRepository;
+import com.thullo.data.repository.TaskRepository;
+import com.thullo.data.repository.UserRepository;
+import com.thullo.web.exception.BadRequestException;
+import com.thullo.web.payload.response.BoardResponse;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Counts the statements run for {@code GET /boards/{boardTag}}, the board role check of the endpoint followed by
+ * {@link BoardServiceImpl#getBoard(String)}, which must not grow with the number of tasks on the board.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class BoardServiceImplQueryCountTest {
+    private static final int MAX_STATEMENTS = 10;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private BoardRepository boardRepository;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private BoardServiceImpl boardService;
+
+    private User owner;
+    private Board board;
+    private int taskCount;
+
+    @BeforeEach
+    void setUp() {
+        boardService = new BoardServiceImpl(boardRepository, taskRepository, attachmentRepository, mock(ModelMapper.class),
+                mock(FileService.class), userRepository, mock(RoleServiceImpl.class), mock(NotificationService.class),
+                mock(BoardChangeService.class), mock(StorageUsageService.class), mock(ApplicationEventPublisher.class));
+
+        owner = persistUser("owner");
+        board = new Board();
+        board.setName("Query count");
+        board.setBoardTag("QRY");
+        board.setUser(owner);
+        board.getCollaborators().add(persistUser("collaborator"));
+        entityManager.persist(board);
+    }
+
+    @Test
+    void testGetBoard_statementCountDoesNotGrowWithTasks() throws BadRequestException {
+        addTasks(5);
+        long fewTasksStatements = countBoardRequestStatements();
+
+        addTasks(50);
+        long manyTasksStatements = countBoardRequestStatements();
+
+        assertEquals(fewTasksStatements, manyTasksStatements);
+        assertTrue(manyTasksStatements <= MAX_STATEMENTS, "GET /boards/{boardTag} ran " + manyTasksStatements + " statements");
+    }
+
+    @Test
+    void testGetBoard_returnsTasksWithTheirAssociations() throws BadRequestException {
+        addTasks(3);
+        entityManager.flush();
+        entityManager.clear();
+
+        BoardResponse response = boardService.getBoard("QRY");
+
+        BoardResponse.Column backlog = response.getTaskColumn().get(0);
+        assertEquals(3, backlog.getTasks().size());
+        assertEquals(1, backlog.getTasks().get(0).getAttachments().size());
+        assertEquals(1, backlog.getTasks().get(0).getContributors().size());
+        assertEquals(1, backlog.getTasks().get(0).getLabels().size());
+        assertEquals(1, response.getCollaborators().size());
+    }
+
+    private long countBoardRequestStatements() throws BadRequestException {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        boardService.hasBoardRole(owner.getEmail(), "QRY");
+        boardService.getBoard("QRY");
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void addTasks(int count) {
+        for (int i = 0; i < count; i++) {
+            taskCount++;
+            Task task = new Task("Task " + taskCount);
+            task.setBoardRef("QRY-" + taskCount);
+            task.setStatus(Status.BACKLOG);
+            task.setPosition((long) taskCount);
+            task.setBoard(board);
+            task.setCreatedBy(owner);
+            task.getContributors().add(persistUser("contributor" + taskCount));
+            task.getLabels().add(new Label("label" + taskCount, "#fff", "#000"));
+            entityManager.persist(task);
+
+            Attachment attachment = new Attachment();
+            attachment.setTask(task);
+            attachment.setFileName("notes.txt");
+            attachment.setFileUrl("http://localhost:8080/api/v1/thullo/files/" + taskCount + ".txt");
+            entityManager.persist(attachment);
+        }
+    }
+
+    private User persistUser(String name) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(name + "@thullo.com");
+        return entityManager.persist(user);
+    }
+}
@@ -120,7 +120,7 @@ class BoardServiceImplTest {
         when(mapper.map(boardRequest, Board.class))
                 .thenReturn(board);
 
-        when(fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl()))
+        when(fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl(), null))
                 .thenReturn(imageUrl);
 
         when(boardRepository.save(board)).thenReturn(board);
@@ -134,7 +134,7 @@ class BoardServiceImplTest {
         verify(mapper).map(boardRequest, Board.class);
         verify(boardRepository).save(board);
         verify(userRepository).findByEmail(userPrincipal.getEmail());
-        verify(fileService).uploadFile(multipartFile, boardRequest.getRequestUrl());
+        verify(fileService).uploadFile(multipartFile, boardRequest.getRequestUrl(), null);
         assertEquals(boardName, actualResponse.getName());
         assertEquals(imageUrl, actualResponse.getImageUrl());
     }
@@ -151,7 +151,7 @@ class BoardServiceImplTest {
         when(mapper.map(boardRequest, Board.class))
                 .thenReturn(board);
 
-        when(fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl()))
+        when(fileService.uploadFile(boardRequest.getFile(), boardRequest.getRequestUrl(), null))
                 .thenReturn(imageUrl);
 
         when(boardRepository.save(board)).thenReturn(board);
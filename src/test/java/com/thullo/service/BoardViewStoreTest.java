@@ -0,0 +1,63 @@
+package com.thullo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thullo.event.BoardChangedEvent;
+import com.thullo.web.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BoardViewStoreTest {
+
+    private BoardViewStore boardViewStore;
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        boardViewStore = new BoardViewStore(new ObjectMapper(), true, 2);
+    }
+
+    @Test
+    void testGetBoard_keepsRenderedViewOfVersion() throws BadRequestException, IOException {
+        BoardViewStore.RenderedBoard first = boardViewStore.getBoard("QRY", 1, this::render);
+        BoardViewStore.RenderedBoard second = boardViewStore.getBoard("QRY", 1, this::render);
+
+        assertSame(first, second);
+        assertArrayEquals(first.getJson(), new GZIPInputStream(new ByteArrayInputStream(first.getGzip())).readAllBytes());
+
+        boardViewStore.getBoard("QRY", 2, this::render);
+
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void testGetBoard_olderVersion_doesNotReplaceNewerView() throws BadRequestException {
+        BoardViewStore.RenderedBoard newer = boardViewStore.getBoard("QRY", 2, this::render);
+        boardViewStore.getBoard("QRY", 1, this::render);
+
+        assertSame(newer, boardViewStore.getBoard("QRY", 2, this::render));
+    }
+
+    @Test
+    void testOnBoardChanged_dropsOlderView() throws BadRequestException {
+        boardViewStore.getBoard("QRY", 1, this::render);
+        boardViewStore.getBoard("ABC", 1, this::render);
+
+        boardViewStore.onBoardChanged(new BoardChangedEvent("QRY", 2, null));
+
+        assertEquals(1, boardViewStore.size());
+    }
+
+    private Object render() {
+        return Map.of("render", renders.incrementAndGet());
+    }
+}
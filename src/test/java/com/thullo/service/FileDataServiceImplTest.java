@@ -2,6 +2,9 @@ package com.thullo.service;
 
 import com.thullo.data.model.FileData;
 import com.thullo.data.repository.FilesRepository;
+import com.thullo.storage.CompressionPolicy;
+import com.thullo.storage.FileBlobRegistry;
+import com.thullo.storage.FileStoreResolver;
 import com.thullo.web.exception.BadRequestException;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
@@ -9,6 +12,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -20,6 +24,8 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.when;
 
 
@@ -29,6 +35,21 @@ class FileDataServiceImplTest {
     @Mock
     private FilesRepository filesRepository;
 
+    @Mock
+    private FileStoreResolver fileStoreResolver;
+
+    @Mock
+    private FileBlobRegistry fileBlobRegistry;
+
+    @Mock
+    private CompressionPolicy compressionPolicy;
+
+    @Mock
+    private UploadIngestor uploadIngestor;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private FileServiceImpl fileService;
 
@@ -36,10 +57,11 @@ class FileDataServiceImplTest {
     @Test
     void testUploadFile_withValidFile_thenGeneratedUrl() throws IOException, BadRequestException {
 //        when(uuidWrapper.getUUID()).thenReturn("123e4567-e89b-12d3-a456-426655440000");
-        when(filesRepository.save(any())).thenReturn(new FileData());
+        when(compressionPolicy.decide(any(), anyLong(), any(), anyInt())).thenReturn(CompressionPolicy.Decision.STORE);
+        when(fileBlobRegistry.acquire(any(), any())).thenReturn(new FileData());
         MultipartFile multipartFile = getMultipartFile("src/main/resources/static/code.png");
         // mock the call to UUIDWrapper.getUUID() to return the mocked UUID
-        String imageUrl = fileService.uploadFile(multipartFile, "http://localhost:8080/api/v1/thullo/upload");
+        String imageUrl = fileService.uploadFile(multipartFile, "http://localhost:8080/api/v1/thullo/upload", "user@mail.com");
         assertEquals("http://localhost:8080/api/v1/thullo/files/" + UUID.randomUUID(), imageUrl);
     }
 
@@ -0,0 +1,192 @@
+package com.thullo.service;
+
+import com.thullo.data.model.Attachment;
+import com.thullo.data.model.Board;
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.StorageScope;
+import com.thullo.data.model.StorageUsage;
+import com.thullo.data.model.Task;
+import com.thullo.data.model.UploaderUsage;
+import com.thullo.data.repository.AttachmentRepository;
+import com.thullo.data.repository.FilesRepository;
+import com.thullo.data.repository.StorageUsageRepository;
+import com.thullo.event.FileDeletedEvent;
+import com.thullo.event.FileUploadedEvent;
+import com.thullo.web.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StorageUsageServiceImplTest {
+    private static final String UPLOADER = "uploader@mail.com";
+
+    @Mock
+    private StorageUsageRepository storageUsageRepository;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private FilesRepository filesRepository;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BoardChangeService boardChangeService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private StorageUsageServiceImpl storageUsageService;
+
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        storageUsageService = new StorageUsageServiceImpl(storageUsageRepository, attachmentRepository, filesRepository,
+                fileService, boardChangeService, transactionTemplate, 1000, 500);
+        board = new Board();
+        board.setBoardTag("QRY");
+    }
+
+    @Test
+    void testCheckQuota_overBoardQuota_throws() {
+        when(storageUsageRepository.findByScopeAndScopeKey(StorageScope.BOARD, "QRY"))
+                .thenReturn(Optional.of(usage(StorageScope.BOARD, "QRY", 900)));
+
+        assertThrows(BadRequestException.class, () -> storageUsageService.checkQuota(board, UPLOADER, 200));
+    }
+
+    @Test
+    void testCheckQuota_overQuotaOfUploader_throws() {
+        when(storageUsageRepository.findByScopeAndScopeKey(StorageScope.BOARD, "QRY")).thenReturn(Optional.empty());
+        when(storageUsageRepository.findByScopeAndScopeKey(StorageScope.USER, UPLOADER))
+                .thenReturn(Optional.of(usage(StorageScope.USER, UPLOADER, 400)));
+
+        assertThrows(BadRequestException.class, () -> storageUsageService.checkQuota(board, UPLOADER, 200));
+    }
+
+    @Test
+    void testOnFileUploaded_countsAgainstUploader() {
+        when(storageUsageRepository.addUsage(StorageScope.USER, UPLOADER, 1, 300, 120)).thenReturn(1);
+
+        storageUsageService.onFileUploaded(new FileUploadedEvent("file", "txt", UPLOADER, 300, 120L));
+
+        verify(storageUsageRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void testOnFileUploaded_withoutCounters_createsThem() {
+        when(storageUsageRepository.addUsage(StorageScope.USER, UPLOADER, 1, 300, 0)).thenReturn(0, 1);
+
+        storageUsageService.onFileUploaded(new FileUploadedEvent("file", "txt", UPLOADER, 300, null));
+
+        verify(storageUsageRepository).saveAndFlush(any(StorageUsage.class));
+        verify(storageUsageRepository, times(2)).addUsage(StorageScope.USER, UPLOADER, 1, 300, 0);
+    }
+
+    @Test
+    void testOnFileDeleted_removesFromUploader() {
+        when(storageUsageRepository.addUsage(StorageScope.USER, UPLOADER, -1, -300, -120)).thenReturn(1);
+
+        storageUsageService.onFileDeleted(new FileDeletedEvent("file", UPLOADER, 300, 120L));
+
+        verify(storageUsageRepository).addUsage(StorageScope.USER, UPLOADER, -1, -300, -120);
+    }
+
+    @Test
+    void testOnFileUploaded_producedByServer_isNotCounted() {
+        storageUsageService.onFileUploaded(new FileUploadedEvent("thumbnail", "png", null, 300, 300L));
+
+        verify(storageUsageRepository, never()).addUsage(any(), any(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void testRecordUpload_countsAttachmentAgainstBoardOnly() {
+        when(storageUsageRepository.addUsage(StorageScope.BOARD, "QRY", 1, 300, 120)).thenReturn(1);
+
+        storageUsageService.recordUpload(attachment(300L, 120L));
+
+        verify(storageUsageRepository, never()).addUsage(eq(StorageScope.USER), any(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRebuild_countsBoardsFromAttachmentsAndUsersFromFiles() {
+        when(transactionTemplate.execute(any())).then(invocation ->
+                invocation.<TransactionCallback<Long>>getArgument(0).doInTransaction(null));
+        when(attachmentRepository.findAll()).thenReturn(List.of(attachment(300L, 120L)));
+        UploaderUsage uploaderUsage = mock(UploaderUsage.class);
+        when(uploaderUsage.getUploadedBy()).thenReturn(UPLOADER);
+        when(uploaderUsage.getFileCount()).thenReturn(2L);
+        when(uploaderUsage.getRawBytes()).thenReturn(500L);
+        when(uploaderUsage.getStoredBytes()).thenReturn(200L);
+        when(filesRepository.sumUsageByUploader()).thenReturn(List.of(uploaderUsage));
+        when(storageUsageRepository.addUsage(any(), any(), anyLong(), anyLong(), anyLong())).thenReturn(1);
+
+        long counted = storageUsageService.rebuild();
+
+        assertEquals(1, counted);
+        verify(storageUsageRepository).deleteAllInBatch();
+        verify(storageUsageRepository).addUsage(StorageScope.BOARD, "QRY", 1, 300, 120);
+        verify(storageUsageRepository).addUsage(StorageScope.USER, UPLOADER, 2, 500, 200);
+        verify(boardChangeService).allBoardsChanged();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRebuild_attachmentWithoutSizes_readsThemFromItsFile() throws Exception {
+        when(transactionTemplate.execute(any())).then(invocation ->
+                invocation.<TransactionCallback<Long>>getArgument(0).doInTransaction(null));
+        Attachment attachment = attachment(null, null);
+        attachment.setFileUrl("http://localhost:8080/api/v1/thullo/files/file-id.txt");
+        when(attachmentRepository.findAll()).thenReturn(List.of(attachment));
+        FileData fileData = new FileData("file-id", "notes.txt", "txt");
+        fileData.setFileSize(300L);
+        fileData.setCompressedSize(120L);
+        // looked up by the id in the url, without the extension
+        when(fileService.getFile("file-id")).thenReturn(fileData);
+        when(storageUsageRepository.addUsage(any(), any(), anyLong(), anyLong(), anyLong())).thenReturn(1);
+
+        storageUsageService.rebuild();
+
+        verify(attachmentRepository).save(attachment);
+        verify(storageUsageRepository).addUsage(StorageScope.BOARD, "QRY", 1, 300, 120);
+    }
+
+    private Attachment attachment(Long rawSize, Long storedSize) {
+        Task task = new Task();
+        task.setBoard(board);
+        Attachment attachment = new Attachment();
+        attachment.setTask(task);
+        attachment.setRawSize(rawSize);
+        attachment.setStoredSize(storedSize);
+        return attachment;
+    }
+
+    private StorageUsage usage(StorageScope scope, String scopeKey, long rawBytes) {
+        StorageUsage usage = new StorageUsage(scope, scopeKey);
+        usage.setRawBytes(rawBytes);
+        return usage;
+    }
+}
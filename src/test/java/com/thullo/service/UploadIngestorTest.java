@@ -0,0 +1,137 @@
+package com.thullo.service;
+
+import com.thullo.web.exception.UploadRejectedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadIngestorTest {
+    private static final byte[] CONTENT = "spooled content".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path spoolDir;
+
+    @Test
+    void testSubmit_ingestsSpooledContentAndDeletesSpool() throws IOException {
+        UploadIngestor uploadIngestor = newIngestor(new SyncTaskExecutor(), 1024, 60);
+        List<String> ingested = new ArrayList<>();
+
+        uploadIngestor.submit(upload("file"), new ByteArrayInputStream(CONTENT),
+                (upload, spoolFile) -> ingested.add(upload.getFileId() + ":" + Files.readString(spoolFile)));
+
+        assertEquals(List.of("file:spooled content"), ingested);
+        assertNull(uploadIngestor.getStatus("file"));
+        assertEquals(0, uploadIngestor.getSpooledBytes());
+        assertEquals(0, countSpoolFiles());
+    }
+
+    @Test
+    void testSubmit_spoolFull_rejects() throws IOException {
+        UploadIngestor uploadIngestor = newIngestor(new SyncTaskExecutor(), CONTENT.length - 1, 60);
+
+        assertThrows(UploadRejectedException.class, () -> uploadIngestor.submit(upload("file"),
+                new ByteArrayInputStream(CONTENT), (upload, spoolFile) -> { }));
+        assertEquals(0, uploadIngestor.getSpooledBytes());
+        assertEquals(0, countSpoolFiles());
+    }
+
+    @Test
+    void testSubmit_executorFull_rejectsAndDeletesSpool() throws IOException {
+        TaskExecutor fullExecutor = task -> {
+            throw new TaskRejectedException("full");
+        };
+        UploadIngestor uploadIngestor = newIngestor(fullExecutor, 1024, 60);
+
+        assertThrows(UploadRejectedException.class, () -> uploadIngestor.submit(upload("file"),
+                new ByteArrayInputStream(CONTENT), (upload, spoolFile) -> { }));
+        assertNull(uploadIngestor.getStatus("file"));
+        assertEquals(0, uploadIngestor.getSpooledBytes());
+        assertEquals(0, countSpoolFiles());
+    }
+
+    @Test
+    void testSubmit_ingestionFails_keepsSpoolUntilPurged() throws IOException {
+        UploadIngestor uploadIngestor = newIngestor(new SyncTaskExecutor(), 1024, 0);
+
+        uploadIngestor.submit(upload("file"), new ByteArrayInputStream(CONTENT), (upload, spoolFile) -> {
+            throw new IOException("store unavailable");
+        });
+
+        assertEquals(UploadIngestor.Status.FAILED, uploadIngestor.getStatus("file"));
+        assertEquals(CONTENT.length, uploadIngestor.getSpooledBytes());
+        assertEquals(2, countSpoolFiles());
+
+        uploadIngestor.purgeFailed();
+
+        assertNull(uploadIngestor.getStatus("file"));
+        assertEquals(0, uploadIngestor.getSpooledBytes());
+        assertEquals(0, countSpoolFiles());
+    }
+
+    @Test
+    void testRecover_ingestsUploadsSpooledBeforeRestart() throws IOException {
+        TaskExecutor stoppedExecutor = task -> { };
+        newIngestor(stoppedExecutor, 1024, 60).submit(upload("file"), new ByteArrayInputStream(CONTENT),
+                (upload, spoolFile) -> { });
+        Files.write(spoolDir.resolve("unconfirmed.part"), CONTENT);
+
+        UploadIngestor restarted = newIngestor(new SyncTaskExecutor(), 1024, 60);
+        List<UploadIngestor.SpooledUpload> ingested = new ArrayList<>();
+        int recovered = restarted.recover((upload, spoolFile) -> ingested.add(upload));
+
+        assertEquals(1, recovered);
+        assertEquals(1, ingested.size());
+        assertEquals("file", ingested.get(0).getFileId());
+        assertEquals("file.txt", ingested.get(0).getFileName());
+        assertEquals(CONTENT.length, ingested.get(0).getFileSize());
+        assertEquals("uploader@mail.com", ingested.get(0).getUploadedBy());
+        assertEquals(0, restarted.getSpooledBytes());
+        assertEquals(0, countSpoolFiles());
+    }
+
+    @Test
+    void testRecover_contentMissing_reportsFailed() throws IOException {
+        newIngestor(task -> { }, 1024, 60).submit(upload("file"), new ByteArrayInputStream(CONTENT),
+                (upload, spoolFile) -> { });
+        Files.delete(spoolDir.resolve("file.part"));
+
+        UploadIngestor restarted = newIngestor(new SyncTaskExecutor(), 1024, 60);
+        int recovered = restarted.recover((upload, spoolFile) -> { });
+
+        assertEquals(0, recovered);
+        assertEquals(UploadIngestor.Status.FAILED, restarted.getStatus("file"));
+    }
+
+    private UploadIngestor newIngestor(TaskExecutor executor, long spoolMaxBytes, long failedRetentionMinutes)
+            throws IOException {
+        UploadIngestor uploadIngestor = new UploadIngestor(executor, true, spoolDir.toString(), spoolMaxBytes, 5,
+                failedRetentionMinutes);
+        uploadIngestor.init();
+        return uploadIngestor;
+    }
+
+    private UploadIngestor.SpooledUpload upload(String fileId) {
+        return new UploadIngestor.SpooledUpload(fileId, fileId + ".txt", CONTENT.length, "uploader@mail.com");
+    }
+
+    private long countSpoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+}
@@ -33,6 +33,9 @@ class UserServiceImplTest {
     @Mock
     private ModelMapper mapper;
 
+    @Mock
+    private BoardChangeService boardChangeService;
+
     @InjectMocks
     private UserServiceImpl userService;
 
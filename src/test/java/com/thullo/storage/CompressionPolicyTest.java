@@ -0,0 +1,64 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.ContentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompressionPolicyTest {
+
+    private CompressionPolicy compressionPolicy;
+
+    private final byte[] text = "id,name,status\n1,Write the docs,backlog\n2,Review the PR,in review\n"
+            .repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    void setUp() {
+        compressionPolicy = new CompressionPolicy(new String[]{"png", "pdf"}, new String[]{"csv:deflate:9"},
+                "gzip", 6, 512, 0.9, 65536);
+    }
+
+    @Test
+    void testDecide_withCompressedFileType_storesAsIs() {
+        CompressionPolicy.Decision decision = compressionPolicy.decide("PNG", text.length, text, text.length);
+
+        assertEquals(ContentCodec.IDENTITY, decision.getCodec());
+    }
+
+    @Test
+    void testDecide_withSmallFile_storesAsIs() {
+        CompressionPolicy.Decision decision = compressionPolicy.decide("txt", 100, text, 100);
+
+        assertEquals(ContentCodec.IDENTITY, decision.getCodec());
+    }
+
+    @Test
+    void testDecide_withFileTypeRule_usesCodecAndLevelOfRule() {
+        CompressionPolicy.Decision decision = compressionPolicy.decide("csv", text.length, text, text.length);
+
+        assertEquals(ContentCodec.DEFLATE, decision.getCodec());
+        assertEquals(9, decision.getLevel());
+    }
+
+    @Test
+    void testDecide_withCompressibleSample_usesDefaultCodec() {
+        CompressionPolicy.Decision decision = compressionPolicy.decide("txt", text.length, text, text.length);
+
+        assertEquals(ContentCodec.GZIP, decision.getCodec());
+        assertEquals(6, decision.getLevel());
+    }
+
+    @Test
+    void testDecide_withIncompressibleSample_storesAsIs() {
+        byte[] random = new byte[8192];
+        new Random(42).nextBytes(random);
+
+        CompressionPolicy.Decision decision = compressionPolicy.decide("bin", random.length, random, random.length);
+
+        assertEquals(ContentCodec.IDENTITY, decision.getCodec());
+    }
+}
@@ -0,0 +1,145 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.ContentCodec;
+import com.thullo.data.model.FileBlob;
+import com.thullo.data.model.FileData;
+import com.thullo.data.repository.FileBlobRepository;
+import com.thullo.data.repository.FilesRepository;
+import com.thullo.data.repository.LegacyFileContentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.thullo.util.Helper.toHex;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Races two uploads of the same new content, stored with different codecs, to publish their blob.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FileBlobRegistryConcurrencyTest {
+    private static final byte[] CONTENT = "the same content, uploaded twice\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private FilesRepository filesRepository;
+
+    @Autowired
+    private LegacyFileContentRepository legacyFileContentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        filesRepository.deleteAll();
+        fileBlobRepository.deleteAll();
+    }
+
+    @Test
+    void testAcquire_sameContentWithDifferentCodecs_sharesOneReadableBlob() throws Exception {
+        Path storeDir = Files.createDirectory(tempDir.resolve("store"));
+        CyclicBarrier bothWritten = new CyclicBarrier(2);
+        LocalFileStore fileStore = new LocalFileStore(storeDir.toString()) {
+            @Override
+            public void write(String storageKey, Path source) throws IOException {
+                super.write(storageKey, source);
+                // neither upload publishes before both have written their content
+                try {
+                    bothWritten.await(10, TimeUnit.SECONDS);
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+            }
+        };
+        FileStoreResolver fileStoreResolver = new FileStoreResolver(List.of(fileStore), "filesystem", false, 0,
+                "filesystem", "filesystem");
+        FileBlobRegistry fileBlobRegistry = new FileBlobRegistry(fileBlobRepository, filesRepository,
+                legacyFileContentRepository, fileStoreResolver, transactionManager);
+
+        FileData text = newFileData("notes.txt", "txt", ContentCodec.GZIP);
+        FileData pdf = newFileData("notes.pdf", "pdf", ContentCodec.IDENTITY);
+        Path textContent = encode(ContentCodec.GZIP);
+        Path pdfContent = encode(ContentCodec.IDENTITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<FileData> textUpload = executor.submit(() -> fileBlobRegistry.acquire(text, textContent));
+            Future<FileData> pdfUpload = executor.submit(() -> fileBlobRegistry.acquire(pdf, pdfContent));
+            FileData savedText = textUpload.get(30, TimeUnit.SECONDS);
+            FileData savedPdf = pdfUpload.get(30, TimeUnit.SECONDS);
+
+            assertEquals(savedText.getStorageKey(), savedPdf.getStorageKey());
+            assertEquals(savedText.getCodec(), savedPdf.getCodec());
+
+            FileBlob blob = fileBlobRepository.findByStorageKey(savedText.getStorageKey()).orElseThrow();
+            assertEquals(2, blob.getReferenceCount());
+            assertEquals(savedText.getCodec(), blob.getCodec());
+            assertArrayEquals(CONTENT, read(fileStore, blob));
+            try (Stream<Path> stored = Files.walk(storeDir)) {
+                // the losing upload's copy is gone
+                assertEquals(1, stored.filter(Files::isRegularFile).count());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FileData newFileData(String fileName, String fileType, ContentCodec codec) throws Exception {
+        FileData fileData = new FileData(UUID.randomUUID().toString(), fileName, fileType);
+        fileData.setContentHash(toHex(MessageDigest.getInstance("SHA-256").digest(CONTENT)));
+        fileData.setFileSize((long) CONTENT.length);
+        fileData.setCodec(codec);
+        return fileData;
+    }
+
+    private Path encode(ContentCodec codec) throws IOException {
+        Path encoded = Files.createTempFile(tempDir, "upload-", ".tmp");
+        try (OutputStream os = codec.encode(Files.newOutputStream(encoded), 6, 8192)) {
+            os.write(CONTENT);
+        }
+        return encoded;
+    }
+
+    private byte[] read(FileStore fileStore, FileBlob blob) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        fileStore.read(blob.getStorageKey(), is -> {
+            try (InputStream decoded = blob.getCodec().decode(is, 8192)) {
+                decoded.transferTo(content);
+            }
+        });
+        return content.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.ContentCodec;
+import com.thullo.data.model.FileBlob;
+import com.thullo.data.model.FileData;
+import com.thullo.data.model.StorageType;
+import com.thullo.data.repository.FileBlobRepository;
+import com.thullo.data.repository.FilesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileBlobRegistryTest {
+    private static final String CONTENT_HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String STORAGE_KEY = CONTENT_HASH + "-1";
+
+    @Mock
+    private FileBlobRepository fileBlobRepository;
+
+    @Mock
+    private FilesRepository filesRepository;
+
+    @Mock
+    private FileStoreResolver fileStoreResolver;
+
+    @Mock
+    private FileStore fileStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private FileBlobRegistry fileBlobRegistry;
+
+    private FileBlob blob;
+    private FileData fileData;
+
+    @BeforeEach
+    void setUp() {
+        blob = new FileBlob(CONTENT_HASH, STORAGE_KEY, StorageType.FILESYSTEM, ContentCodec.IDENTITY, 4L, 4L);
+        fileData = new FileData("cover", "cover.png", "png");
+        fileData.setContentHash(CONTENT_HASH);
+        fileData.setFileSize(4L);
+    }
+
+    @Test
+    void testAcquire_withExistingContent_addsReferenceWithoutWriting() throws IOException {
+        when(fileBlobRepository.findByContentHashForUpdate(CONTENT_HASH)).thenReturn(Optional.of(blob));
+        when(filesRepository.save(any(FileData.class))).then(invocation -> invocation.getArgument(0));
+
+        FileData saved = fileBlobRegistry.acquire(fileData, Path.of("unused"));
+
+        assertEquals(2, blob.getReferenceCount());
+        assertEquals(STORAGE_KEY, saved.getStorageKey());
+        assertEquals(StorageType.FILESYSTEM, saved.getStorageType());
+        verifyNoInteractions(fileStoreResolver);
+    }
+
+    @Test
+    void testRelease_withOtherReferences_keepsContent() throws IOException {
+        blob.setReferenceCount(2);
+        fileData.setStorageKey(STORAGE_KEY);
+        when(fileBlobRepository.findByStorageKeyForUpdate(STORAGE_KEY)).thenReturn(Optional.of(blob));
+
+        long freed = fileBlobRegistry.release(fileData);
+
+        assertEquals(0, freed);
+        assertEquals(1, blob.getReferenceCount());
+        verify(filesRepository).deleteByFileId("cover");
+        verify(fileBlobRepository, never()).delete(any());
+        verifyNoInteractions(fileStoreResolver);
+    }
+
+    @Test
+    void testRelease_withLastReference_deletesContentFromStore() throws IOException {
+        fileData.setStorageKey(STORAGE_KEY);
+        when(fileBlobRepository.findByStorageKeyForUpdate(STORAGE_KEY)).thenReturn(Optional.of(blob));
+        when(fileStoreResolver.getStore(StorageType.FILESYSTEM)).thenReturn(fileStore);
+
+        long freed = fileBlobRegistry.release(fileData);
+
+        assertEquals(4, freed);
+        verify(fileStore).delete(STORAGE_KEY);
+        verify(fileBlobRepository).delete(blob);
+    }
+
+    @Test
+    void testRelocate_switchFails_deletesCopyAndKeepsSource() throws IOException {
+        fileData.setId(7L);
+        fileData.setStorageKey(STORAGE_KEY);
+        FileStore target = mock(FileStore.class);
+        when(fileStoreResolver.getStore(fileData)).thenReturn(fileStore);
+        when(fileBlobRepository.findByStorageKeyForUpdate(STORAGE_KEY)).thenReturn(Optional.empty());
+        doThrow(new QueryTimeoutException("timeout")).when(filesRepository).updateStorage(any(), any(), any());
+
+        assertThrows(QueryTimeoutException.class, () -> fileBlobRegistry.relocate(fileData, target, Path.of("spool")));
+
+        verify(target).write(STORAGE_KEY, Path.of("spool"));
+        verify(target).delete(STORAGE_KEY);
+        verify(fileStore, never()).delete(any());
+    }
+}
@@ -0,0 +1,82 @@
+package com.thullo.storage;
+
+import com.thullo.data.model.FileData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileContentCacheTest {
+
+    private FileContentCache fileContentCache;
+
+    @BeforeEach
+    void setUp() {
+        fileContentCache = new FileContentCache(100, 60, true);
+    }
+
+    @Test
+    void testGet_afterPut_returnsContentFromOffset() throws IOException {
+        fileContentCache.put(new FileData("cover", "cover.png", "png"), new byte[]{1, 2, 3, 4});
+
+        FileContentCache.Entry entry = fileContentCache.get("cover");
+
+        assertNotNull(entry);
+        assertArrayEquals(new byte[]{3, 4}, entry.openStream(2).readAllBytes());
+        assertEquals(1, fileContentCache.getStats().getHits());
+    }
+
+    @Test
+    void testPut_withLessFrequentCandidate_keepsFrequentFiles() {
+        requestTimes("avatar", 5);
+        fileContentCache.put(new FileData("avatar", "avatar.png", "png"), new byte[60]);
+
+        requestTimes("report", 1);
+        FileContentCache.Entry entry = fileContentCache.put(new FileData("report", "report.pdf", "pdf"), new byte[60]);
+
+        assertNull(entry);
+        assertNotNull(fileContentCache.peek("avatar"));
+        assertEquals(1, fileContentCache.getStats().getRejections());
+    }
+
+    @Test
+    void testPut_withMoreFrequentCandidate_evictsLeastRecentlyUsed() {
+        requestTimes("report", 1);
+        fileContentCache.put(new FileData("report", "report.pdf", "pdf"), new byte[60]);
+
+        requestTimes("avatar", 5);
+        fileContentCache.put(new FileData("avatar", "avatar.png", "png"), new byte[60]);
+
+        assertNull(fileContentCache.peek("report"));
+        assertNotNull(fileContentCache.peek("avatar"));
+        assertEquals(60, fileContentCache.getStats().getUsedBytes());
+        assertEquals(1, fileContentCache.getStats().getEvictions());
+    }
+
+    @Test
+    void testInvalidateStorageKey_dropsEveryFileSharingTheContent() {
+        FileData cover = new FileData("cover", "cover.png", "png");
+        cover.setStorageKey("blob");
+        FileData copy = new FileData("copy", "copy.png", "png");
+        copy.setStorageKey("blob");
+        fileContentCache.put(cover, new byte[20]);
+        fileContentCache.put(copy, new byte[20]);
+        fileContentCache.put(new FileData("avatar", "avatar.png", "png"), new byte[20]);
+
+        fileContentCache.invalidateStorageKey("blob");
+
+        assertNull(fileContentCache.peek("cover"));
+        assertNull(fileContentCache.peek("copy"));
+        assertNotNull(fileContentCache.peek("avatar"));
+        assertEquals(20, fileContentCache.getStats().getUsedBytes());
+    }
+
+    private void requestTimes(String fileId, int times) {
+        for (int i = 0; i < times; i++) fileContentCache.get(fileId);
+    }
+}
@@ -0,0 +1,59 @@
+package com.thullo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HelperTest {
+    private static final String FILE_ID = "3f2b8c1e-4d5a-4b6c-9e7f-0a1b2c3d4e5f";
+
+    @Test
+    void testAcceptsEncoding_listedCoding_isAccepted() {
+        assertTrue(Helper.acceptsEncoding("deflate, GZIP;q=0.5", "gzip"));
+    }
+
+    @Test
+    void testAcceptsEncoding_wildcard_isAccepted() {
+        assertTrue(Helper.acceptsEncoding("br, *", "gzip"));
+    }
+
+    @Test
+    void testAcceptsEncoding_zeroQuality_isRefused() {
+        assertFalse(Helper.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(Helper.acceptsEncoding("gzip; q=0.0", "gzip"));
+    }
+
+    @Test
+    void testAcceptsEncoding_zeroQualityBeforeWildcard_isRefused() {
+        assertFalse(Helper.acceptsEncoding("gzip;q=0, *", "gzip"));
+        assertFalse(Helper.acceptsEncoding("*, gzip;q=0", "gzip"));
+    }
+
+    @Test
+    void testAcceptsEncoding_codingOnlyInName_isRefused() {
+        assertFalse(Helper.acceptsEncoding("x-gzip-like", "gzip"));
+        assertFalse(Helper.acceptsEncoding(null, "gzip"));
+    }
+
+    @Test
+    void testExtractFileIdFromUrl_uploadedFileUrl_dropsExtension() {
+        // the urls of covers and attachments returned by FileService.uploadFile
+        assertEquals(FILE_ID, Helper.extractFileIdFromUrl("http://localhost:8080/api/v1/thullo/files/" + FILE_ID + ".png"));
+        assertEquals(FILE_ID, Helper.extractFileIdFromUrl("https://thullo.app/api/v1/thullo/files/" + FILE_ID + ".tar.gz"));
+    }
+
+    @Test
+    void testExtractFileIdFromUrl_urlWithoutExtension_returnsId() {
+        assertEquals(FILE_ID, Helper.extractFileIdFromUrl("http://localhost:8080/api/v1/thullo/files/" + FILE_ID));
+    }
+
+    @Test
+    void testFileIdOf_urlOfOtherHost_hasNoFileId() {
+        assertNull(Helper.fileIdOf("https://lh3.googleusercontent.com/a/photo.jpg"));
+        assertNull(Helper.fileIdOf(null));
+        assertEquals(FILE_ID, Helper.fileIdOf("http://localhost:8080/api/v1/thullo/files/" + FILE_ID + ".jpg"));
+    }
+}